@@ -0,0 +1,80 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.AsyncMemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * findById 10000 번을 한꺼번에 - 막히는 요청 스레드 풀 vs AsyncMemberRepository
+ * 한 번 호출이 10000 건이므로 결과는 건당 시간이다
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OperationsPerInvocation(AsyncRepositoryBenchmark.CALLS)
+public class AsyncRepositoryBenchmark {
+
+    static final int CALLS = 10_000;
+    static final String MEMBER_ID = "am";
+
+    // 톰캣 기본 요청 스레드 수
+    @Param({"200"})
+    public int requestThreads;
+
+    HikariDataSource hikari;
+    MemberRepositoryV5 repository;
+    ExecutorService blockingExecutor;
+    AsyncMemberRepository asyncRepository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hikari = BenchDatabase.dataSource();
+        repository = new MemberRepositoryV5(hikari);
+        repository.save(new Member(MEMBER_ID, 10000));
+        blockingExecutor = Executors.newFixedThreadPool(requestThreads);
+        asyncRepository = new AsyncMemberRepository(repository, BenchDatabase.POOL_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        asyncRepository.close();
+        blockingExecutor.shutdown();
+        new JdbcTemplate(hikari).update("delete from member where member_id = ?", MEMBER_ID);
+        hikari.close();
+    }
+
+    @Benchmark
+    public int blocking() throws Exception {
+        List<Future<Member>> futures = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(blockingExecutor.submit(() -> repository.findById(MEMBER_ID)));
+        }
+        int sum = 0;
+        for (Future<Member> future : futures) {
+            sum += future.get().getMoney();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int async() {
+        List<CompletableFuture<Member>> futures = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            futures.add(asyncRepository.findById(MEMBER_ID));
+        }
+        int sum = 0;
+        for (CompletableFuture<Member> future : futures) {
+            sum += future.join().getMoney();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,90 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_1;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * rows 개를 한 건씩 save 할 때와 saveAll(JDBC 배치)로 보낼 때의 비용
+ * 두 벤치마크 모두 끝에 deleteAll 로 지우므로 지우는 비용은 같다
+ */
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    @Param({"V4_1", "V4_2", "V5"})
+    public String version;
+
+    @Param({"100", "1000"})
+    public int rows;
+
+    HikariDataSource dataSource;
+    MemberRepository repository;
+
+    private final AtomicInteger threadSeq = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = BenchDatabase.dataSource();
+        repository = repository(version);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new JdbcTemplate(dataSource).update("delete from member where member_id like 'b%'");
+        dataSource.close();
+    }
+
+    /**
+     * 스레드마다 자기 회원 id 만 쓴다
+     */
+    @State(Scope.Thread)
+    public static class ThreadRows {
+        String[] memberIds;
+        int[] moneys;
+
+        @Setup(Level.Trial)
+        public void setup(BatchBenchmark benchmark) {
+            int thread = benchmark.threadSeq.getAndIncrement();
+            memberIds = new String[benchmark.rows];
+            moneys = new int[benchmark.rows];
+            for (int i = 0; i < benchmark.rows; i++) {
+                memberIds[i] = "b" + thread + "_" + i;
+                moneys[i] = i;
+            }
+        }
+    }
+
+    @Benchmark
+    public void loop(ThreadRows rows) {
+        for (int i = 0; i < rows.memberIds.length; i++) {
+            repository.save(new Member(rows.memberIds[i], rows.moneys[i]));
+        }
+        repository.deleteAll(rows.memberIds);
+    }
+
+    @Benchmark
+    public void batch(ThreadRows rows) {
+        repository.saveAll(rows.memberIds, rows.moneys);
+        repository.deleteAll(rows.memberIds);
+    }
+
+    private MemberRepository repository(String version) {
+        switch (version) {
+            case "V4_1":
+                return new MemberRepositoryV4_1(dataSource);
+            case "V4_2":
+                return new MemberRepositoryV4_2(dataSource);
+            case "V5":
+                return new MemberRepositoryV5(dataSource);
+            default:
+                throw new IllegalArgumentException("unknown version=" + version);
+        }
+    }
+}
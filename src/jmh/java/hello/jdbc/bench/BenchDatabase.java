@@ -0,0 +1,36 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+/**
+ * 벤치마크용 메모리 H2 - 서버 없이 JVM 안에서 돈다
+ * DB_CLOSE_DELAY=-1 이라 마지막 커넥션이 닫혀도 테이블이 남는다
+ */
+public abstract class BenchDatabase {
+
+    public static final String URL = "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    // 16 스레드 실행에서도 커넥션을 기다리지 않도록
+    public static final int POOL_SIZE = 16;
+
+    public static HikariDataSource dataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        init(dataSource);
+        return dataSource;
+    }
+
+    // 애플리케이션과 같은 schema.sql
+    public static void init(DataSource dataSource) {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+}
@@ -0,0 +1,43 @@
+package hello.jdbc.bench;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 모든 벤치마크를 스레드 1, 4, 16 으로 차례로 실행한다 (./gradlew jmhMatrix)
+ * 처리량(thrpt), 평균 시간(avgt), gc 프로파일러의 할당률(gc.alloc.rate.norm)을 스레드 수별 JSON 으로 남긴다
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREADS = {1, 4, 16};
+
+    public static void main(String[] args) throws RunnerException {
+        File reportDir = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        reportDir.mkdirs();
+
+        for (int threads : THREADS) {
+            Options options = new OptionsBuilder()
+                    .include(BenchmarkRunner.class.getPackageName() + ".*Benchmark")
+                    .mode(Mode.Throughput)
+                    .mode(Mode.AverageTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .addProfiler(GCProfiler.class)
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .measurementIterations(5)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(reportDir, "results-" + threads + "t.json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
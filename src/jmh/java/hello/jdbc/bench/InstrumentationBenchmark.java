@@ -0,0 +1,55 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.HistogramDataSourceMetrics;
+import hello.jdbc.connection.InstrumentedDataSource;
+import hello.jdbc.connection.LatencyHistogram;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * InstrumentedDataSource 오버헤드 - 같은 findById 를 측정 없이/측정하면서 돌려 비교한다
+ * histogramRecord 는 기록 한 번의 비용만 따로 잰다
+ */
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+
+    static final String MEMBER_ID = "im";
+
+    @Param({"plain", "instrumented"})
+    public String dataSource;
+
+    HikariDataSource hikari;
+    MemberRepositoryV5 repository;
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        hikari = BenchDatabase.dataSource();
+        DataSource target = dataSource.equals("instrumented")
+                ? new InstrumentedDataSource(hikari, new HistogramDataSourceMetrics())
+                : hikari;
+        repository = new MemberRepositoryV5(target);
+        repository.save(new Member(MEMBER_ID, 10000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new JdbcTemplate(hikari).update("delete from member where member_id = ?", MEMBER_ID);
+        hikari.close();
+    }
+
+    @Benchmark
+    public Member findById() {
+        return repository.findById(MEMBER_ID);
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+}
@@ -0,0 +1,98 @@
+package hello.jdbc.bench;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.OffHeapMemberRepository;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 회원 잔액 조회 - HashMap<String, Member> vs OffHeapMemberRepository
+ *
+ * 조회 시간은 벤치마크 결과로, 메모리는 Setup 에서 GC 후 힙 사용량 차이(+ 힙 밖 바이트)로 로그에 남긴다
+ * 할당은 gc 프로파일러의 gc.alloc.rate.norm 으로 본다 (offHeap 은 0 이어야 한다)
+ */
+@State(Scope.Benchmark)
+public class OffHeapBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapBenchmark.class);
+
+    @Param({"hashMap", "offHeap"})
+    public String store;
+
+    @Param({"1000000"})
+    public int size;
+
+    String[] memberIds;
+    Map<String, Member> hashMap;
+    OffHeapMemberRepository offHeap;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        memberIds = new String[size];
+        for (int i = 0; i < size; i++) {
+            memberIds[i] = "m" + Integer.toString(i, 36);
+            memberIds[i].hashCode();
+        }
+
+        long before = usedHeap();
+        long offHeapBytes = 0;
+        if (store.equals("hashMap")) {
+            hashMap = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                hashMap.put(memberIds[i], new Member(memberIds[i], i));
+            }
+        } else {
+            offHeap = new OffHeapMemberRepository(size);
+            for (int i = 0; i < size; i++) {
+                offHeap.save(new Member(memberIds[i], i));
+            }
+            offHeapBytes = offHeap.getOffHeapBytes();
+        }
+        long heapBytes = usedHeap() - before;
+        //키 문자열은 둘 다 memberIds 배열이 들고 있으므로 HashMap 쪽에는 빠져 있다
+        log.info("footprint store={}, size={}, heap={}KB, offHeap={}KB, bytes/member={}",
+                store, size, heapBytes / 1024, offHeapBytes / 1024, (heapBytes + offHeapBytes) / size);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public int findMoney(Cursor cursor) {
+        String memberId = memberIds[cursor.next];
+        cursor.next = (cursor.next + 7919) % size;
+        if (hashMap != null) {
+            return hashMap.get(memberId).getMoney();
+        }
+        return offHeap.findMoney(memberId);
+    }
+
+    @Benchmark
+    public int increment(Cursor cursor) {
+        String memberId = memberIds[cursor.next];
+        cursor.next = (cursor.next + 7919) % size;
+        if (hashMap != null) {
+            //HashMap 은 스레드 안전하지 않으므로 같은 조건을 위해 잠근다
+            Member member = hashMap.get(memberId);
+            synchronized (member) {
+                member.setMoney(member.getMoney() + 1);
+            }
+            return 1;
+        }
+        return offHeap.increment(memberId, 1);
+    }
+}
@@ -0,0 +1,160 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.DBConnectionUtil;
+import hello.jdbc.connection.SimpleConnectionPool;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 리포지토리 버전별 save, findById, update 비용
+ *
+ * V0 는 DBConnectionUtil 풀 모드(SimpleConnectionPool)로 메모리 H2 에 붙인다
+ * V1 ~ V5 는 같은 HikariDataSource 를 쓴다
+ */
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    @Param({"V0", "V1", "V2", "V3", "V4_1", "V4_2", "V5"})
+    public String version;
+
+    HikariDataSource dataSource;
+    Repository repository;
+
+    private final AtomicInteger threadSeq = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = BenchDatabase.dataSource();
+        repository = repository(version);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DBConnectionUtil.disablePooling();
+        new JdbcTemplate(dataSource).update("delete from member where member_id like 'r%'");
+        dataSource.close();
+    }
+
+    /**
+     * 스레드마다 자기 회원만 건드려서 행 락 경합 없이 리포지토리 자체의 비용만 잰다
+     */
+    @State(Scope.Thread)
+    public static class ThreadIds {
+        String memberId;
+        String prefix;
+        int seq;
+
+        @Setup(Level.Trial)
+        public void setup(RepositoryBenchmark benchmark) throws SQLException {
+            int thread = benchmark.threadSeq.getAndIncrement();
+            memberId = "rm" + thread;
+            prefix = "rs" + thread + "_";
+            benchmark.repository.save(new Member(memberId, 10000));
+        }
+
+        // save 로 쌓인 행은 반복마다 지운다
+        @TearDown(Level.Iteration)
+        public void clean(RepositoryBenchmark benchmark) {
+            new JdbcTemplate(benchmark.dataSource).update("delete from member where member_id like ?", prefix + "%");
+        }
+
+        // member_id 는 10자까지
+        String nextId() {
+            return prefix + Integer.toString(seq++, 36);
+        }
+    }
+
+    @Benchmark
+    public Member save(ThreadIds ids) throws SQLException {
+        return repository.save(new Member(ids.nextId(), 10000));
+    }
+
+    @Benchmark
+    public Member findById(ThreadIds ids) throws SQLException {
+        return repository.findById(ids.memberId);
+    }
+
+    @Benchmark
+    public void update(ThreadIds ids) throws SQLException {
+        repository.update(ids.memberId, ids.seq++);
+    }
+
+    private Repository repository(String version) {
+        switch (version) {
+            case "V0":
+                DBConnectionUtil.enablePooling(new SimpleConnectionPool(BenchDatabase.URL, BenchDatabase.USERNAME,
+                        BenchDatabase.PASSWORD, BenchDatabase.POOL_SIZE));
+                MemberRepositoryV0 v0 = new MemberRepositoryV0();
+                return Repository.of(v0::save, v0::findById, v0::update);
+            case "V1":
+                MemberRepositoryV1 v1 = new MemberRepositoryV1(dataSource);
+                return Repository.of(v1::save, v1::findById, v1::update);
+            case "V2":
+                MemberRepositoryV2 v2 = new MemberRepositoryV2(dataSource);
+                return Repository.of(v2::save, v2::findById, v2::update);
+            case "V3":
+                MemberRepositoryV3 v3 = new MemberRepositoryV3(dataSource);
+                return Repository.of(v3::save, v3::findById, v3::update);
+            case "V4_1":
+                return Repository.of(new MemberRepositoryV4_1(dataSource));
+            case "V4_2":
+                return Repository.of(new MemberRepositoryV4_2(dataSource));
+            case "V5":
+                return Repository.of(new MemberRepositoryV5(dataSource));
+            default:
+                throw new IllegalArgumentException("unknown version=" + version);
+        }
+    }
+
+    /**
+     * V0 ~ V3 는 공통 인터페이스가 없어서 메서드 참조로 맞춘다
+     */
+    interface Repository {
+        Member save(Member member) throws SQLException;
+
+        Member findById(String memberId) throws SQLException;
+
+        void update(String memberId, int money) throws SQLException;
+
+        static Repository of(Save save, FindById findById, Update update) {
+            return new Repository() {
+                @Override
+                public Member save(Member member) throws SQLException {
+                    return save.save(member);
+                }
+
+                @Override
+                public Member findById(String memberId) throws SQLException {
+                    return findById.findById(memberId);
+                }
+
+                @Override
+                public void update(String memberId, int money) throws SQLException {
+                    update.update(memberId, money);
+                }
+            };
+        }
+
+        static Repository of(MemberRepository repository) {
+            return of(repository::save, repository::findById, repository::update);
+        }
+    }
+
+    interface Save {
+        Member save(Member member) throws SQLException;
+    }
+
+    interface FindById {
+        Member findById(String memberId) throws SQLException;
+    }
+
+    interface Update {
+        void update(String memberId, int money) throws SQLException;
+    }
+}
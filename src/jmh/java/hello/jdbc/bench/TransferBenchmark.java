@@ -0,0 +1,108 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV2;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 트랜잭션 방식별 accountTransfer 비용
+ *
+ * V2   - 커넥션을 파라미터로 넘기는 수동 트랜잭션
+ * V3_1 - PlatformTransactionManager 직접 사용
+ * V3_2 - TransactionTemplate
+ * V3_3 - @Transactional 프록시
+ * V4   - @Transactional 프록시 + 런타임 예외 리포지토리 (MemberRepositoryV5)
+ */
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    @Param({"V2", "V3_1", "V3_2", "V3_3", "V4"})
+    public String service;
+
+    HikariDataSource dataSource;
+    Transfer transfer;
+
+    private final AtomicInteger threadSeq = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = BenchDatabase.dataSource();
+        transfer = transfer(service);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new JdbcTemplate(dataSource).update("delete from member where member_id like 't%'");
+        dataSource.close();
+    }
+
+    /**
+     * 스레드마다 자기 회원 두 명 사이에서만 이체한다 - 교착 상태, 행 락 대기 없이 트랜잭션 비용만 잰다
+     */
+    @State(Scope.Thread)
+    public static class Accounts {
+        String fromId;
+        String toId;
+
+        @Setup(Level.Trial)
+        public void setup(TransferBenchmark benchmark) {
+            int thread = benchmark.threadSeq.getAndIncrement();
+            fromId = "ta" + thread;
+            toId = "tb" + thread;
+            MemberRepositoryV5 repository = new MemberRepositoryV5(benchmark.dataSource);
+            repository.save(new Member(fromId, 1_000_000_000));
+            repository.save(new Member(toId, 0));
+        }
+    }
+
+    @Benchmark
+    public void accountTransfer(Accounts accounts) throws SQLException {
+        transfer.accountTransfer(accounts.fromId, accounts.toId, 1);
+    }
+
+    private Transfer transfer(String service) {
+        PlatformTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        switch (service) {
+            case "V2":
+                return new MemberServiceV2(dataSource, new MemberRepositoryV2(dataSource))::accountTransfer;
+            case "V3_1":
+                return new MemberServiceV3_1(transactionManager, new MemberRepositoryV3(dataSource))::accountTransfer;
+            case "V3_2":
+                return new MemberServiceV3_2(transactionManager, new MemberRepositoryV3(dataSource))::accountTransfer;
+            case "V3_3":
+                MemberServiceV3_3 v3_3 = transactional(new MemberServiceV3_3(new MemberRepositoryV3(dataSource)), transactionManager);
+                return v3_3::accountTransfer;
+            case "V4":
+                MemberServiceV4 v4 = transactional(new MemberServiceV4(new MemberRepositoryV5(dataSource)), transactionManager);
+                return v4::accountTransfer;
+            default:
+                throw new IllegalArgumentException("unknown service=" + service);
+        }
+    }
+
+    // 스프링 컨테이너 없이 @Transactional 을 읽는 프록시를 만든다 (스프링 부트가 만드는 것과 같은 TransactionInterceptor)
+    @SuppressWarnings("unchecked")
+    private static <T> T transactional(T target, PlatformTransactionManager transactionManager) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+        return (T) proxyFactory.getProxy();
+    }
+
+    interface Transfer {
+        void accountTransfer(String fromId, String toId, int money) throws SQLException;
+    }
+}
@@ -0,0 +1,78 @@
+package hello.jdbc.bench;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ErrorCodeExceptionTranslator;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 가입 경로 - 저장 요청의 절반이 키 중복인 부하에서 예외 변환기 비교
+ *
+ * spring    - SQLErrorCodeSQLExceptionTranslator (스택 트레이스 있는 DuplicateKeyException)
+ * table     - ErrorCodeExceptionTranslator (에러 코드 표, 스택 트레이스 없는 키 중복)
+ */
+@State(Scope.Benchmark)
+public class TranslatorBenchmark {
+
+    static final String DUPLICATE_ID = "xdup";
+
+    @Param({"spring", "table"})
+    public String translator;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV4_2 repository;
+
+    private final AtomicInteger threadSeq = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dataSource = BenchDatabase.dataSource();
+        SQLExceptionTranslator exTranslator = translator.equals("spring")
+                ? new SQLErrorCodeSQLExceptionTranslator(dataSource)
+                : new ErrorCodeExceptionTranslator(dataSource);
+        repository = new MemberRepositoryV4_2(dataSource, MemberRepositoryV4_2.DEFAULT_BATCH_SIZE, exTranslator);
+        repository.save(new Member(DUPLICATE_ID, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new JdbcTemplate(dataSource).update("delete from member where member_id like 'x%'");
+        dataSource.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Ids {
+        String prefix;
+        int seq;
+
+        @Setup(Level.Trial)
+        public void setup(TranslatorBenchmark benchmark) {
+            prefix = "x" + benchmark.threadSeq.getAndIncrement() + "_";
+        }
+
+        @TearDown(Level.Iteration)
+        public void clean(TranslatorBenchmark benchmark) {
+            new JdbcTemplate(benchmark.dataSource).update("delete from member where member_id like ?", prefix + "%");
+        }
+    }
+
+    // 짝수 번째는 이미 있는 키 - 잡아서 복구하는 서비스 계층처럼 DuplicateKeyException 을 삼킨다
+    @Benchmark
+    public boolean signup(Ids ids) {
+        int n = ids.seq++;
+        String memberId = (n & 1) == 0 ? DUPLICATE_ID : ids.prefix + Integer.toString(n, 36);
+        try {
+            repository.save(new Member(memberId, 0));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package hello.jdbc.audit;
+
+import hello.jdbc.service.TransferEvent;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 감사 이벤트 링 버퍼 - 생산자 여럿, 소비자 하나
+ *
+ * 슬롯은 처음에 배열로 모두 잡아 두고 이벤트마다 필드를 덮어쓴다
+ * 생산자는 claimed 를 CAS 로 하나 올려 자기 seq 를 받고, 슬롯을 채운 뒤 published[슬롯] = seq 로 공개한다
+ * 소비자는 consumed 부터 공개된 슬롯을 순서대로 복사하고 consumed 를 올려서 자리를 돌려준다
+ * 락이 없다 - 생산자끼리는 CAS 한 번, 생산자와 소비자는 published, consumed 의 volatile 읽기/쓰기로만 만난다
+ */
+final class AuditRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+
+    private final long[] txIds;
+    private final String[] fromIds;
+    private final String[] toIds;
+    private final int[] amounts;
+    private final long[] timestamps;
+    private final long[] publishedNanos;
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong(); // 다음에 받을 seq
+    private volatile long consumed; // 다음에 읽을 seq - 소비자만 쓴다
+
+    AuditRingBuffer(int capacity) {
+        Assert.isTrue(capacity > 0 && Integer.bitCount(capacity) == 1, "capacity 는 2의 거듭제곱이어야 합니다");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.txIds = new long[capacity];
+        this.fromIds = new String[capacity];
+        this.toIds = new String[capacity];
+        this.amounts = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.publishedNanos = new long[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * 자리가 없으면 false
+     */
+    boolean tryPublish(TransferEvent event) {
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed >= capacity) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+
+        int slot = (int) seq & mask;
+        txIds[slot] = event.getTxId();
+        fromIds[slot] = event.getFromId();
+        toIds[slot] = event.getToId();
+        amounts[slot] = event.getAmount();
+        timestamps[slot] = event.getTimestamp();
+        publishedNanos[slot] = System.nanoTime();
+        published.set(slot, seq);
+        return true;
+    }
+
+    /**
+     * 공개된 이벤트를 순서대로 max 개까지 batch 에 복사하고 자리를 돌려준다 - 소비자 스레드만 부른다
+     * 앞의 슬롯이 아직 채워지는 중이면 거기서 멈춘다
+     */
+    int drainTo(Batch batch, int max) {
+        long next = consumed;
+        int count = 0;
+        while (count < max) {
+            long seq = next + count;
+            int slot = (int) seq & mask;
+            if (published.get(slot) != seq) {
+                break;
+            }
+            batch.txIds[count] = txIds[slot];
+            batch.fromIds[count] = fromIds[slot];
+            batch.toIds[count] = toIds[slot];
+            batch.amounts[count] = amounts[slot];
+            batch.timestamps[count] = timestamps[slot];
+            batch.publishedNanos[count] = publishedNanos[slot];
+            count++;
+        }
+        batch.size = count;
+        if (count > 0) {
+            consumed = next + count;
+        }
+        return count;
+    }
+
+    // 받았지만 아직 소비자가 가져가지 않은 이벤트 수
+    long lag() {
+        long read = consumed; // claimed 를 먼저 읽으면 그 사이 소비자가 앞질러 음수가 나올 수 있다
+        return claimed.get() - read;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 소비자가 재사용하는 배치 - 한 번 만들어서 계속 덮어쓴다
+     */
+    static final class Batch {
+        final long[] txIds;
+        final String[] fromIds;
+        final String[] toIds;
+        final int[] amounts;
+        final long[] timestamps;
+        final long[] publishedNanos;
+        int size;
+
+        Batch(int maxSize) {
+            txIds = new long[maxSize];
+            fromIds = new String[maxSize];
+            toIds = new String[maxSize];
+            amounts = new int[maxSize];
+            timestamps = new long[maxSize];
+            publishedNanos = new long[maxSize];
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package hello.jdbc.audit;
+
+import hello.jdbc.connection.LatencyHistogram;
+import hello.jdbc.service.TransferEvent;
+import hello.jdbc.service.TransferListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 이체 감사 로그 - 커밋된 이체를 transfer_audit 에 배치로 넣는다
+ *
+ * MemberServiceV4.addTransferListener 로 붙이면 커밋된 뒤에 이벤트가 링 버퍼(AuditRingBuffer)로 들어간다
+ * 이체 트랜잭션은 감사 insert 를 기다리지 않는다 - 왕복과 락 시간이 이체에 붙지 않는다
+ * 소비자 스레드 하나가 버퍼를 비우며 batchSize 개씩 JDBC 배치 한 번으로 넣는다 (transfer_audit 에 쓰는 쪽은 하나)
+ *
+ * 버퍼가 가득 차면 OverflowPolicy, 버퍼가 비었을 때(와 BLOCK 생산자)는 WaitStrategy 를 따른다
+ * 넣다가 실패한 배치는 다시 넣지 않고 failed 로 센다 - 프로세스가 죽으면 버퍼에 남은 이벤트도 사라진다
+ * 빠짐없이 남겨야 하면 TransferJournal 을 함께 붙이고 저널로 채운다
+ */
+@Slf4j
+public class AuditTrailWriter implements TransferListener, AutoCloseable {
+
+    private static final String INSERT_SQL =
+            "insert into transfer_audit(tx_id, from_id, to_id, amount, committed_at) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate template;
+    private final AuditRingBuffer ring;
+    private final int batchSize;
+    private final WaitStrategy waitStrategy;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Thread consumer;
+    private volatile boolean running = true;
+    // publish 안에 있는 생산자 수 - close() 는 이 수가 0 이 된 뒤에 마지막으로 비운다
+    private final AtomicInteger producers = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram lagLatency = new LatencyHistogram();
+    private final AtomicLong maxLag = new AtomicLong();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+
+    /**
+     * @param capacity  링 버퍼 크기 (2의 거듭제곱)
+     * @param batchSize insert 배치 하나에 담는 최대 이벤트 수
+     */
+    public AuditTrailWriter(DataSource dataSource, int capacity, int batchSize,
+                            WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        Assert.isTrue(batchSize > 0, "batchSize 는 0보다 커야 합니다");
+        this.template = new JdbcTemplate(dataSource);
+        this.ring = new AuditRingBuffer(capacity);
+        this.batchSize = batchSize;
+        this.waitStrategy = waitStrategy;
+        this.overflowPolicy = overflowPolicy;
+        this.consumer = new Thread(this::drainLoop, "audit-writer");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    @Override
+    public void onCommitted(TransferEvent event) {
+        publish(event);
+    }
+
+    /**
+     * 버퍼에 넣고 바로 돌아온다 - 넣지 못하고 버렸으면 false
+     */
+    public boolean publish(TransferEvent event) {
+        // running 을 보기 전에 센다 - close() 가 running 을 내린 뒤에는 이 수만 기다리면 된다
+        producers.incrementAndGet();
+        try {
+            return doPublish(event);
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    private boolean doPublish(TransferEvent event) {
+        if (!running) {
+            throw new RejectedExecutionException("감사 로그가 종료되었습니다");
+        }
+        if (ring.tryPublish(event)) {
+            published.increment();
+            return true;
+        }
+        switch (overflowPolicy) {
+            case DROP:
+                dropped.increment();
+                return false;
+            case REJECT:
+                rejected.increment();
+                throw new RejectedExecutionException("감사 로그 버퍼가 가득 찼습니다 capacity=" + ring.capacity());
+            default:
+                blocked.increment();
+                while (!ring.tryPublish(event)) {
+                    if (!running) {
+                        throw new RejectedExecutionException("감사 로그가 종료되었습니다");
+                    }
+                    waitStrategy.idle();
+                }
+                published.increment();
+                return true;
+        }
+    }
+
+    private void drainLoop() {
+        AuditRingBuffer.Batch batch = new AuditRingBuffer.Batch(batchSize);
+        while (running || ring.lag() > 0) {
+            long lag = ring.lag();
+            if (lag > maxLag.get()) {
+                maxLag.set(lag);
+            }
+            if (ring.drainTo(batch, batchSize) == 0) {
+                waitStrategy.idle();
+                continue;
+            }
+            write(batch);
+        }
+    }
+
+    private void write(AuditRingBuffer.Batch batch) {
+        long start = System.nanoTime();
+        try {
+            template.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement pstmt, int i) throws SQLException {
+                    pstmt.setLong(1, batch.txIds[i]);
+                    pstmt.setString(2, batch.fromIds[i]);
+                    pstmt.setString(3, batch.toIds[i]);
+                    pstmt.setInt(4, batch.amounts[i]);
+                    pstmt.setTimestamp(5, new Timestamp(batch.timestamps[i]));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size;
+                }
+            });
+            written.add(batch.size);
+        } catch (RuntimeException e) {
+            // 소비자 스레드가 죽으면 BLOCK 생산자가 영영 기다린다 - 무엇이든 실패로 세고 계속한다
+            failed.add(batch.size);
+            log.error("감사 로그 insert 실패, size={}, firstTxId={}", batch.size, batch.txIds[0], e);
+        }
+        long end = System.nanoTime();
+        writeLatency.record(end - start);
+        batches.increment();
+        for (int i = 0; i < batch.size; i++) {
+            lagLatency.record(end - batch.publishedNanos[i]);
+        }
+    }
+
+    // 버퍼에 들어왔지만 아직 소비자가 가져가지 않은 이벤트 수
+    public long getLag() {
+        return ring.lag();
+    }
+
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    // 버퍼에 들어온 뒤 insert 가 끝날 때까지 걸린 시간
+    public LatencyHistogram.Snapshot lagLatency() {
+        return lagLatency.snapshot();
+    }
+
+    // 배치 insert 한 번에 걸린 시간
+    public LatencyHistogram.Snapshot writeLatency() {
+        return writeLatency.snapshot();
+    }
+
+    // 시작한 뒤 초당 넣은 이벤트 수
+    public double getThroughput() {
+        long elapsed = System.nanoTime() - startNanos;
+        return written.sum() * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed);
+    }
+
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // 가득 차서 BLOCK 으로 기다린 횟수
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    /**
+     * 새 이벤트를 받지 않고, 버퍼에 남은 이벤트를 모두 넣은 뒤 끝낸다
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // running 을 보고 들어온 생산자가 슬롯을 다 채울 때까지 기다린다 - 그 뒤로는 아무도 슬롯을 받지 않는다
+        while (producers.get() > 0) {
+            waitStrategy.idle();
+        }
+        // 종료 직전에 들어온 이벤트 - 소비자 스레드가 끝났으므로 여기서 넣는다 (claimed == consumed 까지)
+        AuditRingBuffer.Batch batch = new AuditRingBuffer.Batch(batchSize);
+        while (ring.lag() > 0) {
+            ring.drainTo(batch, batchSize);
+            write(batch);
+        }
+        log.info("audit writer closed, written={}, batches={}, failed={}, dropped={}, maxLag={}, throughput={}/s, lagLatency=[{}]",
+                getWrittenCount(), getBatchCount(), getFailedCount(), getDroppedCount(), getMaxLag(),
+                (long) getThroughput(), lagLatency());
+    }
+}
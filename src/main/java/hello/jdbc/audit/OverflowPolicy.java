@@ -0,0 +1,23 @@
+package hello.jdbc.audit;
+
+/**
+ * 링 버퍼가 가득 찼을 때 새 감사 이벤트를 어떻게 할지
+ * 이체는 이미 커밋된 뒤이므로 어느 쪽이든 이체 결과는 바뀌지 않는다
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 자리가 날 때까지 WaitStrategy 로 기다린다 - DB 가 느려지면 이체 응답도 느려진다
+     */
+    BLOCK,
+
+    /**
+     * 버리고 dropped 로 센다
+     */
+    DROP,
+
+    /**
+     * RejectedExecutionException 을 던진다
+     */
+    REJECT
+}
@@ -0,0 +1,44 @@
+package hello.jdbc.audit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 링 버퍼가 비었을 때(소비자), 가득 찼을 때(OverflowPolicy.BLOCK 생산자) 기다리는 방법
+ */
+public enum WaitStrategy {
+
+    /**
+     * 계속 돈다 - 지연이 가장 짧지만 코어 하나를 계속 쓴다
+     */
+    BUSY_SPIN {
+        @Override
+        void idle() {
+            Thread.onSpinWait();
+        }
+    },
+
+    /**
+     * 다른 스레드에 양보하며 돈다
+     */
+    YIELD {
+        @Override
+        void idle() {
+            Thread.yield();
+        }
+    },
+
+    /**
+     * PARK_NANOS 동안 잠든다 - CPU 를 거의 쓰지 않지만 그만큼 늦게 깬다
+     */
+    PARK {
+        @Override
+        void idle() {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    abstract void idle();
+}
@@ -12,7 +12,20 @@ import static hello.jdbc.connection.ConnectionConst.*;
 @Slf4j
 public class DBConnectionUtil {
 
+    // 풀 모드 - null 이면 예전처럼 호출할 때마다 DriverManager 로 새 커넥션을 연다
+    private static volatile SimpleConnectionPool pool;
+
     public static Connection getConnection() {
+        SimpleConnectionPool current = pool;
+        if (current != null) {
+            try {
+                // 반납은 con.close() 그대로 - 닫지 않고 풀로 돌아간다
+                return current.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
         try {
             Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
             log.info("get connection={}, class={}", connection, connection.getClass());
@@ -22,4 +35,28 @@ public class DBConnectionUtil {
             throw new IllegalStateException(e);
         }
     }
+
+    /**
+     * 풀 모드로 전환 - getConnection() 을 쓰는 기존 코드(MemberRepositoryV0 등)를 고치지 않고 커넥션을 재사용한다
+     */
+    public static SimpleConnectionPool enablePooling(int maxSize) {
+        return enablePooling(new SimpleConnectionPool(URL, USERNAME, PASSWORD, maxSize));
+    }
+
+    public static synchronized SimpleConnectionPool enablePooling(SimpleConnectionPool newPool) {
+        SimpleConnectionPool old = pool;
+        pool = newPool;
+        if (old != null) {
+            old.close();
+        }
+        return newPool;
+    }
+
+    public static synchronized void disablePooling() {
+        SimpleConnectionPool old = pool;
+        pool = null;
+        if (old != null) {
+            old.close();
+        }
+    }
 }
@@ -0,0 +1,19 @@
+package hello.jdbc.connection;
+
+/**
+ * InstrumentedDataSource 가 재는 값을 받는 쪽
+ * 기본 구현은 HistogramDataSourceMetrics, Micrometer 등 다른 수집기로 바꿔 끼울 수 있다
+ *
+ * 커넥션을 쓰는 스레드에서 바로 호출되므로 구현은 빨라야 하고 예외를 던지면 안 된다
+ */
+public interface DataSourceMetrics {
+
+    // getConnection() 에 걸린 시간 - 풀에서 기다린 시간
+    void connectionAcquired(long nanos);
+
+    // getConnection() 부터 close() 까지 커넥션을 들고 있던 시간
+    void connectionReleased(long heldNanos);
+
+    // execute, executeQuery, executeUpdate, executeBatch 한 번에 걸린 시간
+    void statementExecuted(String sql, long nanos, boolean failed);
+}
@@ -0,0 +1,114 @@
+package hello.jdbc.connection;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DataSourceMetrics 기본 구현 - 커넥션 획득, 보유 시간과 SQL 별 실행 시간을 LatencyHistogram 에 쌓는다
+ * SQL 종류가 maxSqlCount 를 넘으면 나머지는 OTHER_SQL 한 곳에 모은다
+ */
+public class HistogramDataSourceMetrics implements DataSourceMetrics {
+
+    public static final String OTHER_SQL = "(other)";
+    public static final int DEFAULT_MAX_SQL_COUNT = 256;
+
+    private final int maxSqlCount;
+
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final LatencyHistogram hold = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> statements = new ConcurrentHashMap<>();
+    private final LatencyHistogram other = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+
+    public HistogramDataSourceMetrics() {
+        this(DEFAULT_MAX_SQL_COUNT);
+    }
+
+    public HistogramDataSourceMetrics(int maxSqlCount) {
+        this.maxSqlCount = maxSqlCount;
+    }
+
+    @Override
+    public void connectionAcquired(long nanos) {
+        acquire.record(nanos);
+    }
+
+    @Override
+    public void connectionReleased(long heldNanos) {
+        hold.record(heldNanos);
+    }
+
+    @Override
+    public void statementExecuted(String sql, long nanos, boolean failed) {
+        histogramOf(sql).record(nanos);
+        if (failed) {
+            failures.increment();
+        }
+    }
+
+    public Snapshot snapshot() {
+        Map<String, LatencyHistogram.Snapshot> perSql = new LinkedHashMap<>();
+        statements.forEach((sql, histogram) -> perSql.put(sql, histogram.snapshot()));
+        LatencyHistogram.Snapshot otherSnapshot = other.snapshot();
+        if (otherSnapshot.getCount() > 0) {
+            perSql.put(OTHER_SQL, otherSnapshot);
+        }
+        return new Snapshot(acquire.snapshot(), hold.snapshot(), perSql, failures.sum());
+    }
+
+    private LatencyHistogram histogramOf(String sql) {
+        LatencyHistogram histogram = statements.get(sql);
+        if (histogram != null) {
+            return histogram;
+        }
+        // 크기 확인과 추가가 원자적이지 않아 조금 넘칠 수 있다
+        if (statements.size() >= maxSqlCount) {
+            return other;
+        }
+        return statements.computeIfAbsent(sql, key -> new LatencyHistogram());
+    }
+
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot acquire;
+        private final LatencyHistogram.Snapshot hold;
+        private final Map<String, LatencyHistogram.Snapshot> statements;
+        private final long statementFailures;
+
+        Snapshot(LatencyHistogram.Snapshot acquire, LatencyHistogram.Snapshot hold,
+                 Map<String, LatencyHistogram.Snapshot> statements, long statementFailures) {
+            this.acquire = acquire;
+            this.hold = hold;
+            this.statements = Collections.unmodifiableMap(statements);
+            this.statementFailures = statementFailures;
+        }
+
+        public LatencyHistogram.Snapshot getAcquire() {
+            return acquire;
+        }
+
+        public LatencyHistogram.Snapshot getHold() {
+            return hold;
+        }
+
+        // SQL 문자열 -> 실행 시간
+        public Map<String, LatencyHistogram.Snapshot> getStatements() {
+            return statements;
+        }
+
+        public long getStatementFailures() {
+            return statementFailures;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("acquire: ").append(acquire).append('\n');
+            sb.append("hold: ").append(hold);
+            statements.forEach((sql, snapshot) -> sb.append('\n').append(sql).append(": ").append(snapshot));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package hello.jdbc.connection;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 커넥션 획득 시간, 보유 시간, SQL 실행 시간을 재는 DataSource
+ *
+ * 커넥션 풀 위에 둔다 - new InstrumentedDataSource(hikariDataSource, metrics)
+ * DataSourceUtils, JdbcTemplate, 트랜잭션 매니저가 이 DataSource 를 쓰면
+ * 풀에서 기다린 시간과 트랜잭션이 커넥션을 들고 있던 시간이 그대로 잡힌다
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+    private final DataSourceMetrics metrics;
+
+    public InstrumentedDataSource(DataSource targetDataSource, DataSourceMetrics metrics) {
+        super(targetDataSource);
+        this.metrics = metrics;
+    }
+
+    public DataSourceMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection target = obtainTargetDataSource().getConnection();
+        return wrap(target, start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection target = obtainTargetDataSource().getConnection(username, password);
+        return wrap(target, start);
+    }
+
+    private Connection wrap(Connection target, long start) {
+        long acquired = System.nanoTime();
+        metrics.connectionAcquired(acquired - start);
+        TimedConnection handler = new TimedConnection(target, acquired);
+        handler.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+        return handler.proxy;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class TimedConnection implements InvocationHandler {
+
+        private final Connection target;
+        private final long acquiredAt;
+        private Connection proxy;
+        private boolean released;
+
+        TimedConnection(Connection target, long acquiredAt) {
+            this.target = target;
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        metrics.connectionReleased(System.nanoTime() - acquiredAt);
+                    }
+                    target.close();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + target + "]";
+                case "createStatement":
+                    return statementProxy(Statement.class, (Statement) InstrumentedDataSource.invoke(target, method, args), null);
+                case "prepareStatement":
+                    return statementProxy(PreparedStatement.class,
+                            (Statement) InstrumentedDataSource.invoke(target, method, args), (String) args[0]);
+                case "prepareCall":
+                    return statementProxy(CallableStatement.class,
+                            (Statement) InstrumentedDataSource.invoke(target, method, args), (String) args[0]);
+                default:
+                    return InstrumentedDataSource.invoke(target, method, args);
+            }
+        }
+
+        private Object statementProxy(Class<? extends Statement> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    new TimedStatement(this, statement, sql));
+        }
+    }
+
+    private class TimedStatement implements InvocationHandler {
+
+        private final TimedConnection connection;
+        private final Statement target;
+        private final String preparedSql;
+
+        TimedStatement(TimedConnection connection, Statement target, String preparedSql) {
+            this.connection = connection;
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("getConnection")) {
+                return connection.proxy;
+            }
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (!name.startsWith("execute")) {
+                return InstrumentedDataSource.invoke(target, method, args);
+            }
+
+            // Statement.execute(sql) 는 인자로, PreparedStatement 는 만들 때 받은 SQL 로 구분한다
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            if (sql == null) {
+                sql = name;
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = InstrumentedDataSource.invoke(target, method, args);
+                failed = false;
+                return result;
+            } finally {
+                metrics.statementExecuted(sql, System.nanoTime() - start, failed);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package hello.jdbc.connection;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+
+import java.time.Duration;
+
+/**
+ * R2DBC 커넥션 풀 - 드라이버는 URL 로 찾는다 (r2dbc:h2:mem:///test, r2dbc:h2:tcp://localhost/~/test)
+ * 다 쓴 풀은 dispose() 로 닫는다
+ */
+public abstract class R2dbcConnectionUtil {
+
+    public static ConnectionPool pooled(String url, String username, String password, int maxSize) {
+        ConnectionFactory connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+
+        ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(Math.min(maxSize, 4))
+                .maxSize(maxSize)
+                .maxIdleTime(Duration.ofMinutes(30))
+                .maxAcquireTime(Duration.ofSeconds(30))
+                .build();
+        return new ConnectionPool(configuration);
+    }
+}
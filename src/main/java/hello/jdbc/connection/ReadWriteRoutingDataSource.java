@@ -0,0 +1,165 @@
+package hello.jdbc.connection;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 읽기 전용 트랜잭션은 복제본으로, 나머지는 주 DB 로 보내는 DataSource
+ *
+ * 커넥션을 빌리는 시점의 TransactionSynchronizationManager.isCurrentTransactionReadOnly() 로 고른다
+ * 트랜잭션 매니저는 읽기 전용 표시를 하기 전에 커넥션부터 빌리므로 반드시 LazyConnectionDataSourceProxy 로
+ * 감싸서 첫 쿼리 때 빌리게 해야 한다 - lazy() 로 한 번 감싼 인스턴스를 트랜잭션 매니저와 리포지토리가 같이 쓴다
+ * 트랜잭션 밖의 호출은 주 DB 로 간다 (복제 지연 때문에 방금 쓴 값을 못 읽는 일이 없도록)
+ *
+ * ROUND_ROBIN 은 복제본을 차례로, LEAST_OUTSTANDING 은 지금 빌려준 커넥션이 가장 적은 복제본을 고른다
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING
+    }
+
+    private final DataSource primary;
+    private final DataSource[] replicas;
+    private final Balancing balancing;
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicInteger[] outstanding;
+    private final LongAdder primaryRoutes = new LongAdder();
+    private final LongAdder[] replicaRoutes;
+
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas, Balancing balancing) {
+        Assert.notEmpty(replicas, "replicas 가 비어 있습니다");
+        this.primary = primary;
+        this.replicas = replicas.toArray(new DataSource[0]);
+        this.balancing = balancing;
+        this.outstanding = new AtomicInteger[this.replicas.length];
+        this.replicaRoutes = new LongAdder[this.replicas.length];
+        for (int i = 0; i < this.replicas.length; i++) {
+            outstanding[i] = new AtomicInteger();
+            replicaRoutes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 트랜잭션 매니저와 리포지토리에 넘길 DataSource - 부를 때마다 새로 감싸므로 한 번만 부른다
+     */
+    public DataSource lazy() {
+        return new LazyConnectionDataSourceProxy(this);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route(null, null);
+    }
+
+    // 고른 DataSource 에 username, password 를 그대로 넘긴다
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route(username, password);
+    }
+
+    private Connection route(String username, String password) throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryRoutes.increment();
+            return open(primary, username, password);
+        }
+        int index = balancing == Balancing.LEAST_OUTSTANDING ? leastOutstanding() : roundRobin();
+        replicaRoutes[index].increment();
+        if (balancing == Balancing.ROUND_ROBIN) {
+            return open(replicas[index], username, password);
+        }
+        return tracked(index, username, password);
+    }
+
+    private static Connection open(DataSource dataSource, String username, String password) throws SQLException {
+        return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+    }
+
+    private int roundRobin() {
+        return (int) (next.getAndIncrement() % replicas.length);
+    }
+
+    // 같은 수면 라운드 로빈 위치부터 찾아서 한 복제본에 몰리지 않게 한다
+    private int leastOutstanding() {
+        int start = roundRobin();
+        int best = start;
+        int bestCount = outstanding[start].get();
+        for (int i = 1; i < replicas.length && bestCount > 0; i++) {
+            int index = (start + i) % replicas.length;
+            int count = outstanding[index].get();
+            if (count < bestCount) {
+                best = index;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    // close 할 때 빌려준 수를 줄이도록 감싼다
+    private Connection tracked(int index, String username, String password) throws SQLException {
+        outstanding[index].incrementAndGet();
+        Connection target;
+        try {
+            target = open(replicas[index], username, password);
+        } catch (SQLException | RuntimeException e) {
+            outstanding[index].decrementAndGet();
+            throw e;
+        }
+
+        boolean[] closed = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!closed[0]) {
+                                closed[0] = true;
+                                outstanding[index].decrementAndGet();
+                            }
+                            target.close();
+                            return null;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return invoke(target, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    public long getPrimaryRouteCount() {
+        return primaryRoutes.sum();
+    }
+
+    public long getReplicaRouteCount(int index) {
+        return replicaRoutes[index].sum();
+    }
+
+    // LEAST_OUTSTANDING 일 때만 센다
+    public int getOutstanding(int index) {
+        return outstanding[index].get();
+    }
+}
@@ -0,0 +1,498 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 가벼운 커넥션 풀 - DriverManager 로 만든 커넥션을 재사용한다
+ *
+ * 빌려간 커넥션 수는 Semaphore 로 maxSize 까지 제한하고, 쉬는 커넥션은 락 없는 Deque 에 둔다
+ * 스레드마다 마지막에 쓴 커넥션을 기억해서 먼저 시도한다 (Deque 를 거치지 않는 빠른 경로)
+ * 커넥션 상태(IDLE, IN_USE, REMOVED)는 CAS 로 바꾸기 때문에 Deque 에 남은 항목은 힌트일 뿐이다
+ *
+ * 오래 쉰 커넥션은 빌려주기 전에 isValid 로 확인하고, idleTimeout 이 지나면 닫는다
+ * Statement, ResultSet 도 감싸서, 어디서든 08xxx(연결 끊김) 오류가 나면 그 커넥션은 풀로 돌아오지 않고 버려진다
+ * 빌리기까지 기다린 시간, 빌려서 들고 있던 시간을 지표로 남긴다
+ */
+@Slf4j
+public class SimpleConnectionPool extends AbstractDataSource implements AutoCloseable {
+
+    public static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    // 이 시간 안에 쓰였던 커넥션은 isValid 확인을 건너뛴다
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private static final int IDLE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = 2;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long connectionTimeoutNanos;
+    private final long idleTimeoutNanos;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    private final ThreadLocal<PooledEntry> lastUsed = new ThreadLocal<>();
+    private final AtomicInteger total = new AtomicInteger();
+    // 허가는 얻었지만 반납 중인 커넥션이 아직 Deque 에 없을 때 기다린다
+    private final ReentrantLock returnLock = new ReentrantLock();
+    private final Condition entryReturned = returnLock.newCondition();
+    private final AtomicInteger claimWaiters = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder affinityHits = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder holdNanos = new LongAdder();
+    private final AtomicLong maxHoldNanos = new AtomicLong();
+
+    public SimpleConnectionPool(String url, String username, String password, int maxSize) {
+        this(url, username, password, maxSize, DEFAULT_CONNECTION_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param connectionTimeout 커넥션을 빌리기 위해 기다리는 최대 시간, 넘기면 SQLTimeoutException
+     * @param idleTimeout       이 시간 넘게 쉰 커넥션은 닫는다
+     */
+    public SimpleConnectionPool(String url, String username, String password, int maxSize,
+                                Duration connectionTimeout, Duration idleTimeout) {
+        Assert.isTrue(maxSize > 0, "maxSize 는 0보다 커야 합니다");
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.connectionTimeoutNanos = connectionTimeout.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "simple-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutNanos / 2, TimeUnit.SECONDS.toNanos(1));
+        housekeeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("커넥션 풀이 닫혔습니다");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(connectionTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("커넥션을 얻지 못했습니다 timeout=" + TimeUnit.NANOSECONDS.toMillis(connectionTimeoutNanos) + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("커넥션 대기 중 인터럽트", e);
+        }
+
+        PooledEntry entry;
+        try {
+            entry = claim(start + connectionTimeoutNanos);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        long now = System.nanoTime();
+        long waited = now - start;
+        borrows.increment();
+        waitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        entry.borrowedAt = now;
+        lastUsed.set(entry);
+        return entry.newProxy();
+    }
+
+    // 생성할 때 지정한 계정만 쓴다 - 같은 계정이면 getConnection() 과 같다
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (Objects.equals(this.username, username) && Objects.equals(this.password, password)) {
+            return getConnection();
+        }
+        throw new SQLFeatureNotSupportedException("SimpleConnectionPool 은 생성할 때 지정한 계정만 사용합니다 username=" + username);
+    }
+
+    /**
+     * 쉬는 커넥션과 housekeeper 를 정리한다, 빌려간 커넥션은 반납될 때 닫힌다
+     */
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            entry.inDeque.set(false);
+            if (entry.state.compareAndSet(IDLE, REMOVED)) {
+                destroy(entry);
+            }
+        }
+    }
+
+    // 지표
+    public long getBorrowCount() {
+        return borrows.sum();
+    }
+
+    // 스레드가 마지막에 쓴 커넥션을 다시 빌린 횟수
+    public long getAffinityHitCount() {
+        return affinityHits.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public long getTotalHoldNanos() {
+        return holdNanos.sum();
+    }
+
+    public long getMaxHoldNanos() {
+        return maxHoldNanos.get();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public int getTotalCount() {
+        return total.get();
+    }
+
+    // 허가를 얻었으므로 빌려간 커넥션은 maxSize 보다 적다 - 쉬는 커넥션이 있거나 새로 만들 수 있다
+    private PooledEntry claim(long deadline) throws SQLException {
+        PooledEntry mine = lastUsed.get();
+        if (mine != null && mine.state.compareAndSet(IDLE, IN_USE)) {
+            if (isAlive(mine)) {
+                affinityHits.increment();
+                return mine;
+            }
+            remove(mine);
+        }
+
+        while (true) {
+            PooledEntry entry = idle.pollFirst();
+            if (entry != null) {
+                // inDeque 를 먼저 내려야 반납하는 쪽이 다시 넣는다
+                entry.inDeque.set(false);
+                if (entry.state.compareAndSet(IDLE, IN_USE)) {
+                    if (isAlive(entry)) {
+                        return entry;
+                    }
+                    remove(entry);
+                }
+                continue;
+            }
+
+            int current = total.get();
+            if (current < maxSize) {
+                if (total.compareAndSet(current, current + 1)) {
+                    return create();
+                }
+                continue;
+            }
+            // 반납이 끝나가는 커넥션이 Deque 에 들어올 때까지 기다린다
+            awaitReturn(deadline);
+        }
+    }
+
+    private void awaitReturn(long deadline) throws SQLException {
+        claimWaiters.incrementAndGet();
+        returnLock.lock();
+        try {
+            // 늘린 뒤에 다시 본다 - 그 사이 반납한 쪽은 claimWaiters 를 보고 깨운다
+            if (idle.isEmpty() && total.get() >= maxSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts.increment();
+                    throw new SQLTimeoutException("커넥션을 얻지 못했습니다 timeout=" + TimeUnit.NANOSECONDS.toMillis(connectionTimeoutNanos) + "ms");
+                }
+                entryReturned.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("커넥션 대기 중 인터럽트", e);
+        } finally {
+            returnLock.unlock();
+            claimWaiters.decrementAndGet();
+        }
+    }
+
+    // Deque 에 넣었거나 total 이 줄었다 - 기다리는 claim 이 있을 때만 락을 잡는다
+    private void signalReturned() {
+        if (claimWaiters.get() == 0) {
+            return;
+        }
+        returnLock.lock();
+        try {
+            entryReturned.signalAll();
+        } finally {
+            returnLock.unlock();
+        }
+    }
+
+    private PooledEntry create() throws SQLException {
+        try {
+            Connection raw = DriverManager.getConnection(url, username, password);
+            created.increment();
+            log.info("pool new connection={}, total={}", raw, total.get());
+            return new PooledEntry(raw);
+        } catch (SQLException | RuntimeException e) {
+            total.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isAlive(PooledEntry entry) {
+        if (System.nanoTime() - entry.lastReturnedAt < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return entry.raw.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(PooledEntry entry, boolean broken) {
+        long now = System.nanoTime();
+        long held = now - entry.borrowedAt;
+        holdNanos.add(held);
+        maxHoldNanos.accumulateAndGet(held, Math::max);
+
+        if (broken || closed || !reset(entry)) {
+            remove(entry);
+        } else {
+            entry.lastReturnedAt = now;
+            entry.state.set(IDLE);
+            // 빠른 경로로 빌렸다면 아직 Deque 에 있을 수 있다 - 한 번만 넣는다
+            if (entry.inDeque.compareAndSet(false, true)) {
+                idle.offerFirst(entry);
+            }
+        }
+        signalReturned();
+        permits.release();
+    }
+
+    // 다음 사용자가 앞 사용자의 트랜잭션, 설정을 물려받지 않도록 되돌린다
+    private boolean reset(PooledEntry entry) {
+        Connection raw = entry.raw;
+        try {
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            if (entry.readOnlyChanged) {
+                raw.setReadOnly(entry.defaultReadOnly);
+            }
+            if (entry.isolationChanged) {
+                raw.setTransactionIsolation(entry.defaultIsolation);
+            }
+            entry.readOnlyChanged = false;
+            entry.isolationChanged = false;
+            raw.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            log.warn("Could not reset pooled connection, discarding it", e);
+            return false;
+        }
+    }
+
+    private void remove(PooledEntry entry) {
+        entry.state.set(REMOVED);
+        destroy(entry);
+    }
+
+    private void destroy(PooledEntry entry) {
+        total.decrementAndGet();
+        try {
+            entry.raw.close();
+        } catch (SQLException e) {
+            log.debug("Could not close pooled connection", e);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        Iterator<PooledEntry> it = idle.iterator();
+        while (it.hasNext()) {
+            PooledEntry entry = it.next();
+            if (now - entry.lastReturnedAt > idleTimeoutNanos && entry.state.compareAndSet(IDLE, REMOVED)) {
+                it.remove();
+                entry.inDeque.set(false);
+                destroy(entry);
+                evicted.increment();
+            }
+        }
+        signalReturned();
+    }
+
+    private static Object invokeRaw(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static boolean isConnectionError(Throwable e) {
+        if (e instanceof SQLException) {
+            String sqlState = ((SQLException) e).getSQLState();
+            return sqlState != null && sqlState.startsWith("08");
+        }
+        return false;
+    }
+
+    private class PooledEntry {
+        private final Connection raw;
+        private final AtomicInteger state = new AtomicInteger(IN_USE);
+        private final AtomicBoolean inDeque = new AtomicBoolean();
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private boolean readOnlyChanged;
+        private boolean isolationChanged;
+        private volatile long lastReturnedAt;
+        private long borrowedAt;
+
+        PooledEntry(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.defaultReadOnly = raw.isReadOnly();
+            this.defaultIsolation = raw.getTransactionIsolation();
+            this.lastReturnedAt = System.nanoTime();
+        }
+
+        // 빌릴 때마다 새 프록시 - 반납한 뒤 예전 프록시로 쓰는 것을 막는다
+        Connection newProxy() {
+            AtomicBoolean returned = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> invoke(returned, (Connection) proxy, method, args));
+        }
+
+        private Object invoke(AtomicBoolean returned, Connection proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        giveBack(this, false);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + raw + "]";
+                case "setReadOnly":
+                    readOnlyChanged = true;
+                    break;
+                case "setTransactionIsolation":
+                    isolationChanged = true;
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("이미 반납된 커넥션입니다");
+            }
+            return call(returned, proxy, raw, method, args);
+        }
+
+        // Statement, ResultSet 에서 난 오류도 보도록 같이 감싼다 - getConnection 은 풀의 프록시를 돌려준다
+        private Object wrap(AtomicBoolean returned, Connection connection, Object target, Class<?> type) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                    case "isClosed":
+                        return invokeRaw(target, method, args);
+                    case "getConnection":
+                        return connection;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return target.toString();
+                }
+                if (returned.get()) {
+                    throw new SQLException("이미 반납된 커넥션입니다");
+                }
+                return call(returned, connection, target, method, args);
+            });
+        }
+
+        private Object call(AtomicBoolean returned, Connection connection, Object target, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable error = e.getTargetException();
+                // 네트워크가 끊긴 커넥션은 반납할 때 버린다
+                if (isConnectionError(error) && returned.compareAndSet(false, true)) {
+                    giveBack(this, true);
+                }
+                throw error;
+            }
+            Class<?> type = method.getReturnType();
+            if (result != null && (Statement.class.isAssignableFrom(type) || type == ResultSet.class)) {
+                return wrap(returned, connection, result, type);
+            }
+            return result;
+        }
+    }
+}
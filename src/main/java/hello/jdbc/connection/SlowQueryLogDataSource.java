@@ -0,0 +1,286 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 느린 쿼리 로그 - threshold 보다 오래 걸린 SQL 을 바인딩 파라미터, 트랜잭션, 호출한 리포지토리 메서드와 함께 남긴다
+ *
+ * PreparedStatement 를 만들 때 sampleRate 확률로 측정 대상을 고른다
+ * 고르지 않은 PreparedStatement 는 감싸지 않고 그대로 주므로 비용이 없다
+ * 호출 위치(StackWalker)는 느린 쿼리로 판정됐을 때만 구한다
+ *
+ * JdbcTemplate(MemberRepositoryV5)도 DataSourceUtils 로 이 DataSource 의 커넥션을 쓰므로 그대로 잡힌다
+ */
+@Slf4j
+public class SlowQueryLogDataSource extends DelegatingDataSource {
+
+    public static final String DEFAULT_CALLER_PACKAGE = "hello.jdbc.repository";
+    // 리포지토리가 SQL 을 실행할 때 거치는 공용 도우미 - 호출 위치로 보지 않는다
+    public static final Set<String> DEFAULT_SKIPPED_CLASSES = Set.of(
+            "hello.jdbc.repository.BatchBinder",
+            "hello.jdbc.repository.InListSql",
+            "hello.jdbc.repository.MergeSql",
+            "hello.jdbc.repository.ErrorCodeExceptionTranslator");
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final String callerPackage;
+    private final Set<String> skippedClasses;
+    private final Consumer<SlowQuery> listener;
+
+    public SlowQueryLogDataSource(DataSource targetDataSource, Duration threshold, double sampleRate) {
+        this(targetDataSource, threshold, sampleRate, DEFAULT_CALLER_PACKAGE, SlowQueryLogDataSource::logSlowQuery);
+    }
+
+    /**
+     * @param sampleRate    0 ~ 1, 측정할 PreparedStatement 비율
+     * @param callerPackage 이 패키지에서 처음 나오는 스택 프레임을 호출 위치로 본다
+     * @param listener      느린 쿼리를 받는 쪽, 기본은 WARN 로그
+     */
+    public SlowQueryLogDataSource(DataSource targetDataSource, Duration threshold, double sampleRate,
+                                  String callerPackage, Consumer<SlowQuery> listener) {
+        this(targetDataSource, threshold, sampleRate, callerPackage, DEFAULT_SKIPPED_CLASSES, listener);
+    }
+
+    /**
+     * @param skippedClasses callerPackage 안이지만 호출 위치로 보지 않을 클래스 이름 (중첩 클래스, 람다 포함)
+     */
+    public SlowQueryLogDataSource(DataSource targetDataSource, Duration threshold, double sampleRate,
+                                  String callerPackage, Set<String> skippedClasses, Consumer<SlowQuery> listener) {
+        super(targetDataSource);
+        Assert.isTrue(sampleRate >= 0 && sampleRate <= 1, "sampleRate 는 0 ~ 1 이어야 합니다");
+        this.thresholdNanos = threshold.toNanos();
+        this.sampleRate = sampleRate;
+        this.callerPackage = callerPackage;
+        this.skippedClasses = Set.copyOf(skippedClasses);
+        this.listener = listener;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection wrap(Connection target) {
+        if (sampleRate == 0) {
+            return target;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    Object result = invoke(target, method, args);
+                    if (method.getName().equals("prepareStatement") && sampled()) {
+                        return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                new Class<?>[]{PreparedStatement.class},
+                                new SampledStatement((PreparedStatement) result, (Connection) proxy, (String) args[0]));
+                    }
+                    if (method.getName().equals("createStatement") && sampled()) {
+                        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                                new SampledStatement((Statement) result, (Connection) proxy, null));
+                    }
+                    return result;
+                });
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static void logSlowQuery(SlowQuery query) {
+        log.warn("slow query {}", query);
+    }
+
+    // 호출 스택에서 skippedClasses 를 뺀 callerPackage 의 첫 프레임 - 리포지토리 메서드
+    private String caller() {
+        Optional<StackWalker.StackFrame> frame = StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith(callerPackage) && !skipped(f.getClassName()))
+                .findFirst());
+        return frame.map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber()).orElse("-");
+    }
+
+    // BatchBinder$$Lambda 같은 중첩 클래스는 바깥 클래스 이름으로 본다
+    private boolean skipped(String className) {
+        int nested = className.indexOf('$');
+        return skippedClasses.contains(nested < 0 ? className : className.substring(0, nested));
+    }
+
+    private class SampledStatement implements InvocationHandler {
+
+        private final Statement target;
+        private final Connection connection;
+        private final String preparedSql;
+        private Object[] parameters = new Object[4];
+        private int batchRows;
+
+        SampledStatement(Statement target, Connection connection, String preparedSql) {
+            this.target = target;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && method.getParameterTypes()[0] == int.class) {
+                bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(parameters, null);
+            } else if (name.equals("addBatch")) {
+                batchRows++;
+            } else if (name.equals("getConnection")) {
+                return connection;
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            } else if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            return SlowQueryLogDataSource.invoke(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = SlowQueryLogDataSource.invoke(target, method, args);
+                failed = false;
+                return result;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                if (elapsed >= thresholdNanos) {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+                    listener.accept(new SlowQuery(sql, parameterString(), batchRows, elapsed, failed,
+                            TransactionSynchronizationManager.getCurrentTransactionName(), caller()));
+                }
+                if (method.getName().equals("executeBatch")) {
+                    batchRows = 0;
+                }
+            }
+        }
+
+        private void bind(int index, Object value) {
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+        }
+
+        // 배치는 마지막에 바인딩한 행의 파라미터
+        private String parameterString() {
+            int last = parameters.length;
+            while (last > 0 && parameters[last - 1] == null) {
+                last--;
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < last; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                String value = String.valueOf(parameters[i]);
+                sb.append(value.length() > MAX_PARAMETER_LENGTH ? value.substring(0, MAX_PARAMETER_LENGTH) + "..." : value);
+            }
+            return sb.append(']').toString();
+        }
+    }
+
+    public static class SlowQuery {
+        private final String sql;
+        private final String parameters;
+        private final int batchRows;
+        private final long elapsedNanos;
+        private final boolean failed;
+        private final String transactionName;
+        private final String caller;
+
+        SlowQuery(String sql, String parameters, int batchRows, long elapsedNanos, boolean failed,
+                  String transactionName, String caller) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.batchRows = batchRows;
+            this.elapsedNanos = elapsedNanos;
+            this.failed = failed;
+            this.transactionName = transactionName;
+            this.caller = caller;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getParameters() {
+            return parameters;
+        }
+
+        public int getBatchRows() {
+            return batchRows;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        // 트랜잭션이 없거나 이름이 없으면 null
+        public String getTransactionName() {
+            return transactionName;
+        }
+
+        public String getCaller() {
+            return caller;
+        }
+
+        @Override
+        public String toString() {
+            return "elapsed=" + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms"
+                    + (failed ? " (failed)" : "")
+                    + ", sql=" + sql
+                    + ", params=" + parameters
+                    + (batchRows > 0 ? ", batchRows=" + batchRows : "")
+                    + ", tx=" + (transactionName == null ? "-" : transactionName)
+                    + ", caller=" + caller;
+        }
+    }
+}
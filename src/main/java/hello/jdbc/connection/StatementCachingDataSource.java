@@ -0,0 +1,298 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PreparedStatement 캐시 - 커넥션마다 SQL 문자열을 키로 하는 LRU 를 둔다
+ *
+ * prepareStatement(sql) 은 캐시에 있으면 꺼내서 주고, 없을 때만 새로 만든다
+ * 꺼내간 PreparedStatement 를 close() 하면 닫지 않고 파라미터를 비운 뒤 캐시로 돌려놓는다
+ * 커넥션을 close() 하면 캐시에 있던 PreparedStatement 도 모두 닫는다
+ *
+ * 커넥션이 재사용되어야 의미가 있으므로 커넥션 풀 아래에 둔다
+ * HikariDataSource.setDataSource(new StatementCachingDataSource(driverDataSource))
+ * 이렇게 하면 풀이 커넥션을 돌려받을 때 닫는 PreparedStatement 도 캐시로 돌아간다
+ */
+@Slf4j
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private final int cacheSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StatementCachingDataSource(DataSource targetDataSource) {
+        this(targetDataSource, DEFAULT_CACHE_SIZE);
+    }
+
+    public StatementCachingDataSource(DataSource targetDataSource, int cacheSize) {
+        super(targetDataSource);
+        Assert.isTrue(cacheSize > 0, "cacheSize 는 0보다 커야 합니다");
+        this.cacheSize = cacheSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Connection wrap(Connection target) {
+        CachingConnection handler = new CachingConnection(target);
+        handler.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, handler);
+        return handler.proxy;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 캐시 키 - SQL 과 ResultSet 종류
+     */
+    private static final class Key {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return resultSetType == key.resultSetType && resultSetConcurrency == key.resultSetConcurrency && sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, resultSetType, resultSetConcurrency);
+        }
+    }
+
+    /**
+     * 커넥션 하나의 캐시
+     * 커넥션은 보통 한 스레드가 쓰지만, 풀이 다른 스레드에서 닫을 수 있으므로 캐시 접근은 동기화한다
+     */
+    private class CachingConnection implements InvocationHandler {
+
+        private final Connection target;
+        private final Map<Key, PreparedStatement> cache = new LinkedHashMap<>(16, 0.75f, true);
+        private Connection proxy;
+        private boolean closed;
+
+        CachingConnection(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return checkout(new Key((String) args[0], ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY));
+                    }
+                    if (args.length == 3 && method.getParameterTypes()[1] == int.class && method.getParameterTypes()[2] == int.class) {
+                        return checkout(new Key((String) args[0], (Integer) args[1], (Integer) args[2]));
+                    }
+                    // 자동 생성 키, holdability 를 지정하는 경우는 캐시하지 않는다
+                    return StatementCachingDataSource.invoke(target, method, args);
+                case "close":
+                    closeAll();
+                    target.close();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StatementCaching[" + target + "]";
+                default:
+                    return StatementCachingDataSource.invoke(target, method, args);
+            }
+        }
+
+        private PreparedStatement checkout(Key key) throws SQLException {
+            PreparedStatement pstmt;
+            synchronized (this) {
+                pstmt = cache.remove(key);
+            }
+            if (pstmt != null && !pstmt.isClosed()) {
+                hits.increment();
+            } else {
+                misses.increment();
+                pstmt = target.prepareStatement(key.sql, key.resultSetType, key.resultSetConcurrency);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new CachedStatement(this, key, pstmt));
+        }
+
+        // 같은 SQL 을 동시에 두 개 열었다면 먼저 돌아온 것만 캐시에 남긴다
+        void checkin(Key key, PreparedStatement pstmt) {
+            List<PreparedStatement> toClose = new ArrayList<>(1);
+            synchronized (this) {
+                if (closed || cache.containsKey(key)) {
+                    toClose.add(pstmt);
+                } else {
+                    cache.put(key, pstmt);
+                    if (cache.size() > cacheSize) {
+                        Iterator<PreparedStatement> eldest = cache.values().iterator();
+                        toClose.add(eldest.next());
+                        eldest.remove();
+                        evictions.increment();
+                    }
+                }
+            }
+            toClose.forEach(JdbcUtils::closeStatement);
+        }
+
+        private void closeAll() {
+            List<PreparedStatement> toClose;
+            synchronized (this) {
+                closed = true;
+                toClose = new ArrayList<>(cache.values());
+                cache.clear();
+            }
+            toClose.forEach(JdbcUtils::closeStatement);
+        }
+    }
+
+    /**
+     * 꺼내간 PreparedStatement - close() 하면 캐시로 돌아간다
+     * 호출자가 바꾼 설정은 돌려놓기 전에 기본값으로 되돌린다
+     */
+    private static class CachedStatement implements InvocationHandler {
+
+        private final CachingConnection connection;
+        private final Key key;
+        private final PreparedStatement target;
+        private ResultSet lastResultSet;
+        private boolean queryTimeoutChanged;
+        private boolean fetchSizeChanged;
+        private boolean maxRowsChanged;
+        private boolean closed;
+
+        CachedStatement(CachingConnection connection, Key key, PreparedStatement target) {
+            this.connection = connection;
+            this.key = key;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release();
+                    return null;
+                case "isClosed":
+                    return closed || target.isClosed();
+                case "getConnection":
+                    return connection.proxy;
+                case "setQueryTimeout":
+                    queryTimeoutChanged = true;
+                    break;
+                case "setFetchSize":
+                    fetchSizeChanged = true;
+                    break;
+                case "setMaxRows":
+                    maxRowsChanged = true;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + target + "]";
+            }
+            if (closed) {
+                throw new SQLException("PreparedStatement 가 이미 닫혔습니다");
+            }
+            Object result = StatementCachingDataSource.invoke(target, method, args);
+            if (result instanceof ResultSet && method.getName().equals("executeQuery")) {
+                lastResultSet = (ResultSet) result;
+            }
+            return result;
+        }
+
+        private void release() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                JdbcUtils.closeResultSet(lastResultSet);
+                target.clearParameters();
+                target.clearBatch();
+                if (queryTimeoutChanged) {
+                    target.setQueryTimeout(0);
+                }
+                if (fetchSizeChanged) {
+                    target.setFetchSize(0);
+                }
+                if (maxRowsChanged) {
+                    target.setMaxRows(0);
+                }
+                target.clearWarnings();
+            } catch (SQLException e) {
+                // 되돌리지 못한 PreparedStatement 는 재사용하지 않는다
+                log.debug("Could not reset cached PreparedStatement, closing it", e);
+                JdbcUtils.closeStatement(target);
+                return;
+            }
+            connection.checkin(key, target);
+        }
+    }
+}
@@ -8,6 +8,7 @@ public class Member {
 
     private String memberId;
     private int money;
+    private long version; // 낙관적 락 - 변경될 때마다 1씩 증가
 
     public Member() {
 
@@ -18,4 +19,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
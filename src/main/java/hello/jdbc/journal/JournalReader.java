@@ -0,0 +1,109 @@
+package hello.jdbc.journal;
+
+import hello.jdbc.service.TransferEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 저널을 처음부터 순서대로 읽는다 (복구, 재생용)
+ *
+ * 세그먼트마다 읽기 전용으로 매핑해서 빈 슬롯이나 crc 가 맞지 않는 레코드가 나올 때까지 읽고 다음 세그먼트로 넘어간다
+ * 쓰고 있는 저널을 읽으면 그 순간까지 붙은 레코드를 읽는다 (force 되지 않은 것도 보일 수 있다)
+ */
+public class JournalReader implements AutoCloseable {
+
+    private final List<Path> segments;
+    private final ByteBuffer scratch = ByteBuffer.allocate(JournalRecord.SIZE);
+    private final CRC32C crc = new CRC32C();
+
+    private int segmentIndex = -1;
+    private MappedByteBuffer segment;
+    private long readCount;
+
+    public JournalReader(Path directory) {
+        try {
+            this.segments = segments(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("저널 목록 읽기 실패 directory=" + directory, e);
+        }
+    }
+
+    // 세그먼트 파일 - 이름(번호) 순
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(TransferJournal.SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 다음 레코드, 끝이면 null
+     */
+    public TransferEvent next() {
+        while (true) {
+            if (segment != null && segment.remaining() >= JournalRecord.SIZE) {
+                segment.get(scratch.array());
+                TransferEvent event = JournalRecord.decode(scratch, crc);
+                if (event != null) {
+                    readCount++;
+                    return event;
+                }
+            }
+            if (!openNext()) {
+                return null;
+            }
+        }
+    }
+
+    private boolean openNext() {
+        segment = null;
+        if (++segmentIndex >= segments.size()) {
+            segmentIndex = segments.size();
+            return false;
+        }
+        Path path = segments.get(segmentIndex);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("저널 세그먼트 열기 실패 path=" + path, e);
+        }
+    }
+
+    /**
+     * 남은 레코드를 모두 읽는다 - 읽은 레코드 수를 돌려준다
+     */
+    public long replay(Consumer<TransferEvent> action) {
+        long before = readCount;
+        for (TransferEvent event = next(); event != null; event = next()) {
+            action.accept(event);
+        }
+        return readCount - before;
+    }
+
+    public long getReadCount() {
+        return readCount;
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        segmentIndex = segments.size();
+    }
+}
@@ -0,0 +1,91 @@
+package hello.jdbc.journal;
+
+import hello.jdbc.service.TransferEvent;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * 저널 레코드 - 고정 길이 SIZE 바이트
+ *
+ * crc(int) | txId(long) | timestamp(long) | amount(int) | fromLen(byte) | toLen(byte) | from(char * 10) | to(char * 10) | 여백
+ * crc 는 나머지 바이트 전체의 CRC32C - 쓰다 만(torn) 레코드를 찾아낸다
+ * fromLen 이 0 이면 빈 슬롯 (member_id 는 비어 있지 않다)
+ */
+final class JournalRecord {
+
+    static final int SIZE = 72;
+    static final int MAX_ID_CHARS = 10;
+
+    private static final int CRC = 0;
+    private static final int TX_ID = 4;
+    private static final int TIMESTAMP = 12;
+    private static final int AMOUNT = 20;
+    private static final int FROM_LENGTH = 24;
+    private static final int TO_LENGTH = 25;
+    private static final int FROM = 26;
+    private static final int TO = FROM + MAX_ID_CHARS * 2;
+
+    private JournalRecord() {
+    }
+
+    // scratch(힙, SIZE 바이트)에 레코드를 만든다
+    static void encode(ByteBuffer scratch, TransferEvent event, CRC32C crc) {
+        checkId(event.getFromId());
+        checkId(event.getToId());
+        scratch.clear();
+        scratch.putLong(TX_ID, event.getTxId());
+        scratch.putLong(TIMESTAMP, event.getTimestamp());
+        scratch.putInt(AMOUNT, event.getAmount());
+        scratch.put(FROM_LENGTH, (byte) event.getFromId().length());
+        scratch.put(TO_LENGTH, (byte) event.getToId().length());
+        putChars(scratch, FROM, event.getFromId());
+        putChars(scratch, TO, event.getToId());
+        for (int i = TO + MAX_ID_CHARS * 2; i < SIZE; i++) {
+            scratch.put(i, (byte) 0);
+        }
+        scratch.putInt(CRC, checksum(scratch, crc));
+    }
+
+    /**
+     * scratch 에 읽어 온 레코드 - 빈 슬롯이거나 crc 가 맞지 않으면 null
+     */
+    static TransferEvent decode(ByteBuffer scratch, CRC32C crc) {
+        int fromLength = scratch.get(FROM_LENGTH);
+        int toLength = scratch.get(TO_LENGTH);
+        if (fromLength <= 0 || fromLength > MAX_ID_CHARS || toLength <= 0 || toLength > MAX_ID_CHARS) {
+            return null;
+        }
+        if (scratch.getInt(CRC) != checksum(scratch, crc)) {
+            return null;
+        }
+        return new TransferEvent(scratch.getLong(TX_ID), getChars(scratch, FROM, fromLength),
+                getChars(scratch, TO, toLength), scratch.getInt(AMOUNT), scratch.getLong(TIMESTAMP));
+    }
+
+    private static int checksum(ByteBuffer scratch, CRC32C crc) {
+        crc.reset();
+        crc.update(scratch.array(), scratch.arrayOffset() + TX_ID, SIZE - TX_ID);
+        return (int) crc.getValue();
+    }
+
+    private static void checkId(String memberId) {
+        if (memberId.isEmpty() || memberId.length() > MAX_ID_CHARS) {
+            throw new IllegalArgumentException("memberId 는 1 ~ " + MAX_ID_CHARS + "자여야 합니다 memberId=" + memberId);
+        }
+    }
+
+    private static void putChars(ByteBuffer scratch, int offset, String value) {
+        for (int i = 0; i < MAX_ID_CHARS; i++) {
+            scratch.putChar(offset + i * 2, i < value.length() ? value.charAt(i) : 0);
+        }
+    }
+
+    private static String getChars(ByteBuffer scratch, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = scratch.getChar(offset + i * 2);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,316 @@
+package hello.jdbc.journal;
+
+import hello.jdbc.connection.LatencyHistogram;
+import hello.jdbc.service.TransferEvent;
+import hello.jdbc.service.TransferListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * 이체 저널 - 커밋된 이체를 고정 길이 레코드로 세그먼트 파일 끝에 붙인다
+ *
+ * 세그먼트는 recordsPerSegment 개 크기로 미리 잡은 파일을 메모리 매핑해서 쓴다 - 가득 차면 다음 파일로 넘어간다
+ * append 는 매핑된 메모리에 쓰고 자기 레코드가 디스크에 내려갈(force) 때까지 기다린다
+ * force 는 저널 스레드가 groupSize 개가 쌓이거나 maxSyncDelay 가 지나면 한 번에 한다 (그룹 fsync)
+ *
+ * MemberServiceV4.addTransferListener 로 붙이면 커밋된 이체만 기록된다
+ * DB 커밋과 저널 기록 사이에 프로세스가 죽으면 그 이체는 저널에 없다 - 저널은 잔액의 원본이 아니다
+ * 리스너는 afterCommit 에서 이체한 스레드가 부르므로, accountTransfer 를 부른 쪽은 커넥션을 돌려주기 전에
+ * 최대 maxSyncDelay (와 force 시간)만큼 더 기다린다 - 풀 크기를 잡을 때 그만큼 커넥션 점유가 늘어난다고 본다
+ *
+ * force 가 실패하면 저널 스레드는 멈추고, 기다리던 append 와 이후의 append 는 모두 IllegalStateException 을 던진다
+ * force 가 syncTimeout 안에 끝나지 않아도 append 는 IllegalStateException - 이때 레코드는 나중에 내려갈 수도 있다
+ * 다시 열면 마지막 세그먼트에서 crc 가 맞는 마지막 레코드 다음부터 쓴다
+ */
+@Slf4j
+public class TransferJournal implements TransferListener, AutoCloseable {
+
+    static final String SUFFIX = ".journal";
+    static final Duration DEFAULT_SYNC_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final int groupSize;
+    private final long maxSyncDelayNanos;
+    private final long syncTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition syncRequested = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    private final ByteBuffer scratch = ByteBuffer.allocate(JournalRecord.SIZE);
+    private final CRC32C crc = new CRC32C();
+    private final Thread syncer;
+    private volatile boolean running = true;
+
+    // lock 으로 보호
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int slot;
+    private int segmentCapacity;
+    private long appendedSeq;
+    private long durableSeq;
+    private RuntimeException failure; // force 실패 - 한 번 생기면 저널은 더 쓰지 않는다
+
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder rolls = new LongAdder();
+
+    /**
+     * @param recordsPerSegment 세그먼트 파일 하나에 담는 레코드 수
+     * @param groupSize         이만큼 쌓이면 바로 force 한다
+     * @param maxSyncDelay      첫 레코드가 쌓인 뒤 force 까지 기다리는 최대 시간
+     */
+    public TransferJournal(Path directory, int recordsPerSegment, int groupSize, Duration maxSyncDelay) {
+        this(directory, recordsPerSegment, groupSize, maxSyncDelay, DEFAULT_SYNC_TIMEOUT);
+    }
+
+    /**
+     * @param syncTimeout append 가 자기 레코드의 force 를 기다리는 최대 시간
+     */
+    public TransferJournal(Path directory, int recordsPerSegment, int groupSize, Duration maxSyncDelay,
+                           Duration syncTimeout) {
+        Assert.isTrue(recordsPerSegment > 0, "recordsPerSegment 는 0보다 커야 합니다");
+        Assert.isTrue(groupSize > 0, "groupSize 는 0보다 커야 합니다");
+        Assert.isTrue(syncTimeout.compareTo(maxSyncDelay) > 0, "syncTimeout 은 maxSyncDelay 보다 커야 합니다");
+        this.directory = directory;
+        this.recordsPerSegment = recordsPerSegment;
+        this.groupSize = groupSize;
+        this.maxSyncDelayNanos = maxSyncDelay.toNanos();
+        this.syncTimeoutNanos = syncTimeout.toNanos();
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("저널 열기 실패 directory=" + directory, e);
+        }
+        this.syncer = new Thread(this::syncLoop, "journal-sync");
+        this.syncer.setDaemon(true);
+        this.syncer.start();
+    }
+
+    static Path segmentPath(Path directory, long index) {
+        return directory.resolve(String.format("%020d", index) + SUFFIX);
+    }
+
+    // 마지막 세그먼트를 열고, crc 가 맞는 마지막 레코드 다음 슬롯을 찾는다
+    private void recover() throws IOException {
+        List<Path> segments = JournalReader.segments(directory);
+        if (segments.isEmpty()) {
+            open(0);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        String name = last.getFileName().toString();
+        open(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+        while (slot < segmentCapacity) {
+            segment.position(slot * JournalRecord.SIZE);
+            segment.get(scratch.array());
+            if (JournalRecord.decode(scratch, crc) == null) {
+                break;
+            }
+            slot++;
+        }
+        log.info("저널 복구 segment={}, slot={}", segmentIndex, slot);
+    }
+
+    private void open(long index) throws IOException {
+        Path path = segmentPath(directory, index);
+        FileChannel next = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // 이미 있는 세그먼트는 만들 때의 크기를 따른다
+        long existing = next.size() / JournalRecord.SIZE;
+        segmentCapacity = existing > 0 ? (int) existing : recordsPerSegment;
+        segment = next.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentCapacity * JournalRecord.SIZE);
+        channel = next;
+        segmentIndex = index;
+        slot = 0;
+    }
+
+    // lock 안에서 - 지금 세그먼트를 내리고 다음 세그먼트를 연다
+    private void roll() throws IOException {
+        long start = System.nanoTime();
+        segment.force();
+        syncLatency.record(System.nanoTime() - start);
+        syncs.increment();
+        durableSeq = appendedSeq;
+        synced.signalAll();
+
+        channel.close();
+        open(segmentIndex + 1);
+        rolls.increment();
+    }
+
+    @Override
+    public void onCommitted(TransferEvent event) {
+        append(event);
+    }
+
+    /**
+     * 레코드를 붙이고 디스크에 내려갈 때까지 기다린다
+     *
+     * @return 이 저널을 연 뒤로 몇 번째 레코드인지
+     */
+    public long append(TransferEvent event) {
+        lock.lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("저널이 닫혔습니다");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("저널 fsync 실패로 멈췄습니다 segment=" + segmentIndex, failure);
+            }
+            JournalRecord.encode(scratch, event, crc);
+            if (slot == segmentCapacity) {
+                roll();
+            }
+            segment.position(slot * JournalRecord.SIZE);
+            segment.put(scratch.array());
+            slot++;
+            long seq = ++appendedSeq;
+            appended.increment();
+
+            // 첫 레코드면 maxSyncDelay 를 재기 시작하고, groupSize 가 차면 바로 내린다
+            long pending = seq - durableSeq;
+            if (pending == 1 || pending >= groupSize) {
+                syncRequested.signal();
+            }
+            long remaining = syncTimeoutNanos;
+            while (durableSeq < seq) {
+                if (failure != null) {
+                    throw new IllegalStateException("저널 fsync 실패 seq=" + seq, failure);
+                }
+                if (remaining <= 0) {
+                    throw new IllegalStateException("저널 fsync 시간 초과 seq=" + seq + ", durableSeq=" + durableSeq);
+                }
+                remaining = synced.awaitNanos(remaining);
+            }
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("저널 쓰기 실패 segment=" + segmentIndex, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("저널 fsync 대기 중 인터럽트", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            MappedByteBuffer target;
+            long upTo;
+            lock.lock();
+            try {
+                if (running && appendedSeq == durableSeq) {
+                    syncRequested.await();
+                }
+                if (running && appendedSeq - durableSeq < groupSize) {
+                    syncRequested.awaitNanos(maxSyncDelayNanos);
+                }
+                if (appendedSeq == durableSeq) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+                target = segment;
+                upTo = appendedSeq;
+            } catch (InterruptedException e) {
+                // close() 가 깨운다
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            // 쓰기를 막지 않도록 락 밖에서 내린다 - 그 사이 붙은 레코드는 다음 번에 내린다
+            long start = System.nanoTime();
+            try {
+                target.force();
+            } catch (RuntimeException e) {
+                // 어디까지 내려갔는지 알 수 없다 - 기다리는 append 를 모두 깨워서 실패시키고 멈춘다
+                log.error("저널 fsync 실패 segment={}, upTo={}", segmentIndex, upTo, e);
+                lock.lock();
+                try {
+                    failure = e;
+                    synced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            syncLatency.record(System.nanoTime() - start);
+            syncs.increment();
+
+            lock.lock();
+            try {
+                durableSeq = Math.max(durableSeq, upTo);
+                synced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public long getAppendedCount() {
+        return appended.sum();
+    }
+
+    // force 횟수 - appended / syncs 가 한 번에 내린 레코드 수
+    public long getSyncCount() {
+        return syncs.sum();
+    }
+
+    public long getRollCount() {
+        return rolls.sum();
+    }
+
+    public LatencyHistogram.Snapshot syncLatency() {
+        return syncLatency.snapshot();
+    }
+
+    /**
+     * 남은 레코드를 내리고 닫는다 - 닫은 뒤의 append 는 실패한다
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            syncRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            segment.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("저널 닫기 실패 segment=" + segmentIndex, e);
+        } finally {
+            lock.unlock();
+        }
+        log.info("journal closed, appended={}, syncs={}, rolls={}, syncLatency=[{}]",
+                getAppendedCount(), getSyncCount(), getRollCount(), syncLatency());
+    }
+}
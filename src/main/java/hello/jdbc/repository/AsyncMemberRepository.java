@@ -0,0 +1,155 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 비동기 MemberRepository - 호출 스레드를 막지 않고 CompletableFuture 를 돌려준다
+ *
+ * 기존 JDBC 구현을 그대로 쓰고 실행만 다른 스레드로 넘긴다
+ * JDK 21 이상이면 가상 스레드(요청마다 하나), 아니면 maxConcurrency 개짜리 스레드 풀에서 돈다
+ * 가상 스레드는 몇만 개가 떠도 되지만 커넥션 풀은 아니므로, 세마포어로 동시에 DB 를 쓰는 작업을
+ * maxConcurrency(커넥션 풀 크기) 개로 묶는다 - 나머지는 HikariCP 가 아니라 세마포어에서 싸게 기다린다
+ *
+ * 주의: 트랜잭션 동기화는 스레드에 묶이므로 호출한 쪽의 트랜잭션에 참여하지 않는다
+ * 각 호출은 따로 커넥션을 받아 자동 커밋으로 실행된다
+ */
+@Slf4j
+public class AsyncMemberRepository implements AutoCloseable {
+
+    private final MemberRepository target;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    /**
+     * @param maxConcurrency 동시에 DB 를 쓰는 작업 수 - 커넥션 풀 크기에 맞춘다
+     */
+    public AsyncMemberRepository(MemberRepository target, int maxConcurrency) {
+        this(target, defaultExecutor(maxConcurrency), maxConcurrency, true);
+    }
+
+    public AsyncMemberRepository(MemberRepository target, ExecutorService executor, int maxConcurrency) {
+        this(target, executor, maxConcurrency, false);
+    }
+
+    private AsyncMemberRepository(MemberRepository target, ExecutorService executor, int maxConcurrency,
+                                  boolean ownsExecutor) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency 는 0보다 커야 합니다");
+        this.target = target;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * 가상 스레드 실행기, 없으면(JDK 21 미만) maxConcurrency 개 스레드 풀
+     * 소스 레벨이 11 이라 리플렉션으로 찾는다
+     */
+    public static ExecutorService defaultExecutor(int maxConcurrency) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("AsyncMemberRepository uses virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("virtual threads not available, AsyncMemberRepository uses {} platform threads", maxConcurrency);
+        }
+        AtomicInteger sequence = new AtomicInteger();
+        return new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "async-member-repository-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<Member> save(Member member) {
+        return submit(repository -> repository.save(member));
+    }
+
+    public CompletableFuture<Member> findById(String memberId) {
+        return submit(repository -> repository.findById(memberId));
+    }
+
+    public CompletableFuture<Map<String, Member>> findByIds(Collection<String> memberIds) {
+        return submit(repository -> repository.findByIds(memberIds));
+    }
+
+    public CompletableFuture<Void> update(String memberId, int money) {
+        return submit(repository -> {
+            repository.update(memberId, money);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> delete(String memberId) {
+        return submit(repository -> {
+            repository.delete(memberId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Integer> increment(String memberId, int delta) {
+        return submit(repository -> repository.increment(memberId, delta));
+    }
+
+    public CompletableFuture<Boolean> debitIfSufficient(String memberId, int amount) {
+        return submit(repository -> repository.debitIfSufficient(memberId, amount));
+    }
+
+    public CompletableFuture<UpsertOutcome> upsert(Member member) {
+        return submit(repository -> repository.upsert(member));
+    }
+
+    /**
+     * 위에 없는 작업 - 작업 하나가 허가 하나를 잡으므로 안에서 커넥션을 두 개 이상 동시에 잡으면 안 된다
+     */
+    public <T> CompletableFuture<T> submit(Function<MemberRepository, T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("DB 작업 대기 중 인터럽트", e);
+            }
+            try {
+                return work.apply(target);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    // DB 를 쓰고 있는 작업 수
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    // 세마포어에서 기다리는 작업 수 (추정값)
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package hello.jdbc.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 배치의 i 번째 행을 PreparedStatement 에 바인딩한다
+ * 배열을 인덱스로 직접 읽기 때문에 int 값을 박싱하지 않는다
+ */
+@FunctionalInterface
+interface BatchBinder {
+
+    void bind(PreparedStatement pstmt, int index) throws SQLException;
+
+    /**
+     * size 개의 행을 addBatch 하고 batchSize 마다 executeBatch 한다
+     * 반환값은 i 번째 행이 변경한 행 수
+     */
+    static int[] execute(PreparedStatement pstmt, int size, int batchSize, BatchBinder binder) throws SQLException {
+        int[] counts = new int[size];
+        int sent = 0;
+        for (int i = 0; i < size; i++) {
+            binder.bind(pstmt, i);
+            pstmt.addBatch();
+
+            // batchSize 마다 한 번씩 보내서 드라이버에 쌓이는 배치가 끝없이 커지지 않게 한다
+            if ((i + 1) % batchSize == 0) {
+                sent = collect(pstmt.executeBatch(), counts, sent);
+            }
+        }
+        if (size % batchSize != 0) {
+            collect(pstmt.executeBatch(), counts, sent);
+        }
+        return counts;
+    }
+
+    private static int collect(int[] result, int[] counts, int from) {
+        System.arraycopy(result, 0, counts, from, result.length);
+        return from + result.length;
+    }
+}
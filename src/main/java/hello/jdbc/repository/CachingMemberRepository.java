@@ -0,0 +1,309 @@
+package hello.jdbc.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import hello.jdbc.domain.Member;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 조회 캐시 - MemberRepository 데코레이터
+ * Caffeine(W-TinyLFU)으로 크기, TTL 을 제한하고 자주 조회되는 회원을 남긴다
+ *
+ * 트랜잭션 안에서 읽은 값은 커밋된 뒤에 캐시에 올리고,
+ * 트랜잭션이 변경한 회원은 그 트랜잭션이 끝날 때까지 캐시를 거치지 않는다
+ */
+public class CachingMemberRepository implements MemberRepository {
+
+    private static final int STRIPES = 64;
+
+    private final MemberRepository target;
+    private final Cache<String, Member> cache;
+
+    // 회원별 무효화 횟수(스트라이프), 조회하는 동안 무효화가 있었다면 읽은 값을 캐시에 올리지 않는다
+    private final AtomicLongArray invalidations = new AtomicLongArray(STRIPES);
+
+    public CachingMemberRepository(MemberRepository target, long maximumSize, Duration expireAfterWrite) {
+        this.target = target;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * hit, miss, eviction 횟수
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = target.save(member);
+        written(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        TxCacheState tx = currentTx();
+        if (tx != null && tx.dirty.contains(memberId)) {
+            // 이 트랜잭션이 변경한 회원은 커밋 전 값을 봐야 하므로 DB 에서 읽는다
+            return target.findById(memberId);
+        }
+
+        Member cached = cache.getIfPresent(memberId);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        long stamp = stamp(memberId);
+        Member member = target.findById(memberId);
+        publish(tx, member, stamp);
+        return member;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        target.update(memberId, money);
+        written(memberId);
+    }
+
+    @Override
+    public void update(String memberId, int money, long version) {
+        // version 이 안 맞아 실패해도 캐시에 남은 값이 오래된 것이므로 지운다
+        try {
+            target.update(memberId, money, version);
+        } finally {
+            written(memberId);
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        target.delete(memberId);
+        written(memberId);
+    }
+
+    @Override
+    public int increment(String memberId, int delta) {
+        int count = target.increment(memberId, delta);
+        written(memberId);
+        return count;
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        boolean debited = target.debitIfSufficient(memberId, amount);
+        written(memberId);
+        return debited;
+    }
+
+    @Override
+    public int[] incrementAll(String[] memberIds, int[] deltas) {
+        int[] counts = target.incrementAll(memberIds, deltas);
+        written(memberIds);
+        return counts;
+    }
+
+    @Override
+    public UpsertOutcome upsert(Member member) {
+        UpsertOutcome outcome = target.upsert(member);
+        written(member.getMemberId());
+        return outcome;
+    }
+
+    @Override
+    public UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys) {
+        UpsertOutcome[] outcomes = target.upsertAll(memberIds, moneys);
+        written(memberIds);
+        return outcomes;
+    }
+
+    @Override
+    public void saveAll(String[] memberIds, int[] moneys) {
+        target.saveAll(memberIds, moneys);
+        written(memberIds);
+    }
+
+    @Override
+    public void updateAll(String[] memberIds, int[] moneys) {
+        target.updateAll(memberIds, moneys);
+        written(memberIds);
+    }
+
+    @Override
+    public void deleteAll(String[] memberIds) {
+        target.deleteAll(memberIds);
+        written(memberIds);
+    }
+
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) {
+        TxCacheState tx = currentTx();
+        Map<String, Member> result = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String memberId : memberIds) {
+            Member cached = tx != null && tx.dirty.contains(memberId) ? null : cache.getIfPresent(memberId);
+            if (cached != null) {
+                result.put(memberId, copy(cached));
+            } else {
+                misses.add(memberId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        long[] stamps = new long[misses.size()];
+        for (int i = 0; i < stamps.length; i++) {
+            stamps[i] = stamp(misses.get(i));
+        }
+        Map<String, Member> loaded = target.findByIds(misses);
+        for (int i = 0; i < stamps.length; i++) {
+            Member member = loaded.get(misses.get(i));
+            if (member != null && (tx == null || !tx.dirty.contains(member.getMemberId()))) {
+                publish(tx, member, stamps[i]);
+            }
+        }
+        result.putAll(loaded);
+        return result;
+    }
+
+    // 잠그면서 읽는 조회는 항상 DB 로 보낸다
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        return target.findByIdsForUpdate(memberIds);
+    }
+
+    // 전체 조회는 캐시를 채우지 않는다
+    @Override
+    public Stream<Member> streamAll() {
+        return target.streamAll();
+    }
+
+    @Override
+    public void forEach(Consumer<Member> action) {
+        target.forEach(action);
+    }
+
+    private void publish(TxCacheState tx, Member member, long stamp) {
+        if (tx == null) {
+            putIfNotInvalidated(member.getMemberId(), copy(member), stamp);
+        } else {
+            tx.pending.put(member.getMemberId(), new PendingPut(copy(member), stamp));
+        }
+    }
+
+    // 조회를 시작한 뒤로 무효화가 없었을 때만 올린다
+    // compute 는 같은 키의 invalidate 와 직렬화되므로 오래된 값이 뒤늦게 들어가지 않는다
+    private void putIfNotInvalidated(String memberId, Member member, long stamp) {
+        cache.asMap().compute(memberId, (id, current) -> stamp(id) == stamp ? member : current);
+    }
+
+    private void written(String[] memberIds) {
+        for (String memberId : memberIds) {
+            written(memberId);
+        }
+    }
+
+    private void written(String memberId) {
+        evict(memberId);
+        TxCacheState tx = currentTx();
+        if (tx != null) {
+            tx.dirty.add(memberId);
+        }
+    }
+
+    private void evict(String memberId) {
+        invalidations.incrementAndGet(stripe(memberId));
+        cache.invalidate(memberId);
+    }
+
+    private long stamp(String memberId) {
+        return invalidations.get(stripe(memberId));
+    }
+
+    private int stripe(String memberId) {
+        int h = memberId.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    // 캐시에 들어있는 객체를 호출자가 바꾸지 못하도록 복사해서 주고받는다
+    private Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+
+    private TxCacheState currentTx() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        TxCacheState tx = (TxCacheState) TransactionSynchronizationManager.getResource(this);
+        if (tx == null) {
+            tx = new TxCacheState();
+            TransactionSynchronizationManager.bindResource(this, tx);
+            TransactionSynchronizationManager.registerSynchronization(tx);
+        }
+        return tx;
+    }
+
+    private static class PendingPut {
+        private final Member member;
+        private final long stamp;
+
+        PendingPut(Member member, long stamp) {
+            this.member = member;
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * 트랜잭션 하나 동안 모아둔 캐시 변경
+     * 커밋되면 읽은 값을 올리고, 커밋이든 롤백이든 변경한 회원은 다시 무효화한다
+     */
+    private class TxCacheState implements TransactionSynchronization {
+
+        private final Set<String> dirty = new HashSet<>();
+        private final Map<String, PendingPut> pending = new HashMap<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(CachingMemberRepository.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(CachingMemberRepository.this, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            pending.forEach((memberId, put) -> {
+                if (!dirty.contains(memberId)) {
+                    putIfNotInvalidated(memberId, put.member, put.stamp);
+                }
+            });
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+            // 커밋 전에 다른 스레드가 올려둔 이전 값을 지운다
+            dirty.forEach(CachingMemberRepository.this::evict);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.repository.ex.StacklessDuplicateKeyException;
+import org.springframework.dao.*;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.InvalidResultSetAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.support.SQLErrorCodes;
+import org.springframework.jdbc.support.SQLErrorCodesFactory;
+import org.springframework.jdbc.support.SQLExceptionSubclassTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 에러 코드 표로 변환하는 SQLExceptionTranslator
+ *
+ * SQLErrorCodeSQLExceptionTranslator(dataSource) 는 만들 때 DB 메타데이터를 조회하고,
+ * 변환할 때마다 카테고리별 에러 코드 배열을 차례로 검사한다
+ * 여기서는 처음 변환할 때 DB 제품을 한 번 확인하고, 제품별로 에러 코드 -> 예외 종류 표를 만들어 공유한다
+ * 표에 없는 에러 코드는 SQLException 하위 타입, SQLState 로 변환한다
+ *
+ * 키 중복은 스택 트레이스 없는 StacklessDuplicateKeyException 으로 만든다 (stacklessDuplicateKey)
+ */
+public class ErrorCodeExceptionTranslator implements SQLExceptionTranslator {
+
+    // DB 제품 이름 -> 에러 코드 표, 같은 DB 를 쓰는 리포지토리끼리 공유한다
+    private static final Map<String, Map<Integer, Category>> TABLES = new ConcurrentHashMap<>();
+
+    private final DataSource dataSource;
+    private final boolean stacklessDuplicateKey;
+    private final SQLExceptionTranslator fallback = new SQLExceptionSubclassTranslator();
+    private volatile Map<Integer, Category> table;
+
+    public ErrorCodeExceptionTranslator(DataSource dataSource) {
+        this(dataSource, true);
+    }
+
+    public ErrorCodeExceptionTranslator(DataSource dataSource, boolean stacklessDuplicateKey) {
+        this.dataSource = dataSource;
+        this.stacklessDuplicateKey = stacklessDuplicateKey;
+    }
+
+    @Override
+    public DataAccessException translate(String task, String sql, SQLException ex) {
+        Category category = table().get(errorCodeOf(ex));
+        if (category == null) {
+            DataAccessException translated = fallback.translate(task, sql, ex);
+            return translated != null ? translated : new UncategorizedSQLException(task, sql, ex);
+        }
+        String message = message(task, sql, ex);
+        switch (category) {
+            case DUPLICATE_KEY:
+                return stacklessDuplicateKey ? new StacklessDuplicateKeyException(message, ex) : new DuplicateKeyException(message, ex);
+            case DATA_INTEGRITY_VIOLATION:
+                return new DataIntegrityViolationException(message, ex);
+            case BAD_SQL_GRAMMAR:
+                return new BadSqlGrammarException(task, sql != null ? sql : "", ex);
+            case INVALID_RESULT_SET_ACCESS:
+                return new InvalidResultSetAccessException(task, sql != null ? sql : "", ex);
+            case PERMISSION_DENIED:
+                return new PermissionDeniedDataAccessException(message, ex);
+            case DATA_ACCESS_RESOURCE_FAILURE:
+                return new DataAccessResourceFailureException(message, ex);
+            case TRANSIENT_DATA_ACCESS_RESOURCE:
+                return new TransientDataAccessResourceException(message, ex);
+            case CANNOT_ACQUIRE_LOCK:
+                return new CannotAcquireLockException(message, ex);
+            case DEADLOCK_LOSER:
+                return new DeadlockLoserDataAccessException(message, ex);
+            case CANNOT_SERIALIZE_TRANSACTION:
+                return new CannotSerializeTransactionException(message, ex);
+            default:
+                throw new IllegalStateException("unknown category=" + category);
+        }
+    }
+
+    private Map<Integer, Category> table() {
+        Map<Integer, Category> current = table;
+        if (current == null) {
+            // 경쟁이 나도 같은 표를 얻을 뿐이라 동기화하지 않는다
+            SQLErrorCodes codes = SQLErrorCodesFactory.getInstance().resolveErrorCodes(dataSource);
+            if (codes == null || codes.getDatabaseProductName() == null) {
+                // 메타데이터를 못 읽었으면(연결 실패 등) 이번엔 fallback 으로 변환하고 다음에 다시 시도한다
+                return Map.of();
+            }
+            current = TABLES.computeIfAbsent(codes.getDatabaseProductName(), name -> buildTable(codes));
+            table = current;
+        }
+        return current;
+    }
+
+    // BatchUpdateException 등으로 감싸진 경우 원인 쪽 에러 코드를 쓴다 (스프링과 같은 규칙)
+    private static int errorCodeOf(SQLException ex) {
+        SQLException current = ex;
+        while (current.getErrorCode() == 0 && current.getCause() instanceof SQLException) {
+            current = (SQLException) current.getCause();
+        }
+        return current.getErrorCode();
+    }
+
+    private static String message(String task, String sql, SQLException ex) {
+        return task + "; " + (sql != null ? "SQL [" + sql + "]; " : "") + ex.getMessage();
+    }
+
+    private static Map<Integer, Category> buildTable(SQLErrorCodes codes) {
+        if (codes.isUseSqlStateForTranslation()) {
+            // 에러 코드 대신 SQLState 를 쓰는 DB - 전부 fallback(SQLState 변환)에 맡긴다
+            return Map.of();
+        }
+        Map<Integer, Category> table = new HashMap<>();
+        // 뒤에 넣은 것이 이기므로 스프링의 검사 순서를 거꾸로 넣는다
+        put(table, codes.getCannotSerializeTransactionCodes(), Category.CANNOT_SERIALIZE_TRANSACTION);
+        put(table, codes.getDeadlockLoserCodes(), Category.DEADLOCK_LOSER);
+        put(table, codes.getCannotAcquireLockCodes(), Category.CANNOT_ACQUIRE_LOCK);
+        put(table, codes.getTransientDataAccessResourceCodes(), Category.TRANSIENT_DATA_ACCESS_RESOURCE);
+        put(table, codes.getDataAccessResourceFailureCodes(), Category.DATA_ACCESS_RESOURCE_FAILURE);
+        put(table, codes.getPermissionDeniedCodes(), Category.PERMISSION_DENIED);
+        put(table, codes.getDataIntegrityViolationCodes(), Category.DATA_INTEGRITY_VIOLATION);
+        put(table, codes.getDuplicateKeyCodes(), Category.DUPLICATE_KEY);
+        put(table, codes.getInvalidResultSetAccessCodes(), Category.INVALID_RESULT_SET_ACCESS);
+        put(table, codes.getBadSqlGrammarCodes(), Category.BAD_SQL_GRAMMAR);
+        return Map.copyOf(table);
+    }
+
+    private static void put(Map<Integer, Category> table, String[] codes, Category category) {
+        for (String code : codes) {
+            try {
+                table.put(Integer.parseInt(code), category);
+            } catch (NumberFormatException e) {
+                // 숫자가 아닌 코드는 fallback 이 처리한다
+            }
+        }
+    }
+
+    private enum Category {
+        BAD_SQL_GRAMMAR,
+        INVALID_RESULT_SET_ACCESS,
+        DUPLICATE_KEY,
+        DATA_INTEGRITY_VIOLATION,
+        PERMISSION_DENIED,
+        DATA_ACCESS_RESOURCE_FAILURE,
+        TRANSIENT_DATA_ACCESS_RESOURCE,
+        CANNOT_ACQUIRE_LOCK,
+        DEADLOCK_LOSER,
+        CANNOT_SERIALIZE_TRANSACTION
+    }
+}
@@ -0,0 +1,28 @@
+package hello.jdbc.repository;
+
+import org.springframework.util.Assert;
+
+/**
+ * memberId 해시로 샤드를 고른다
+ * String.hashCode 는 끝 글자만 다른 id(member1, member2 ...)끼리 아래 비트가 몰리므로 한 번 섞는다
+ */
+public class HashShardRouter implements ShardRouter {
+
+    private final int shards;
+
+    public HashShardRouter(int shards) {
+        Assert.isTrue(shards > 0, "shards 는 0보다 커야 합니다");
+        this.shards = shards;
+    }
+
+    @Override
+    public int shardCount() {
+        return shards;
+    }
+
+    @Override
+    public int shardOf(String memberId) {
+        int h = memberId.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+}
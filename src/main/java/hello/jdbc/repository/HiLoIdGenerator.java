@@ -0,0 +1,171 @@
+package hello.jdbc.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 회원 id 발급기 (hi/lo)
+ *
+ * IdBlockSource 에서 blockSize 개짜리 블록을 예약해 두고 메모리에서 하나씩 나눠준다
+ * 블록 안에서는 AtomicLong 증가 하나라서 DB 왕복도 락도 없고, 다른 노드와 겹치지 않으므로
+ * 저장할 때 키 중복 예외가 나지 않는다 - 중복이면 숫자를 붙여 다시 insert 하는 복구가 필요 없다
+ *
+ * 남은 id 가 prefetchThreshold 개가 되면 다음 블록을 미리 예약한다 (백그라운드)
+ * 블록을 다 쓸 때까지 예약이 안 끝났으면 그때만 기다린다
+ * 재시작하면 쓰지 않은 나머지 id 는 버려진다 - 빈 번호가 생길 뿐 중복은 없다
+ */
+@Slf4j
+public class HiLoIdGenerator implements AutoCloseable {
+
+    // 직접 정하는 회원 id 는 이 접두어로 시작하면 안 된다
+    public static final String DEFAULT_PREFIX = "m";
+    private static final int MAX_ID_LENGTH = 10;
+
+    private final IdBlockSource source;
+    private final int blockSize;
+    private final int prefetchThreshold;
+    private final String prefix;
+    private final ExecutorService prefetcher;
+
+    private volatile Block current;
+    private CompletableFuture<Long> prefetched; // this 로 보호
+
+    private final LongAdder reservedBlocks = new LongAdder();
+    private final LongAdder prefetchHits = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    public HiLoIdGenerator(IdBlockSource source, int blockSize, int prefetchThreshold) {
+        this(source, blockSize, prefetchThreshold, DEFAULT_PREFIX);
+    }
+
+    /**
+     * @param blockSize         한 번에 예약할 id 수
+     * @param prefetchThreshold 남은 id 가 이만큼이 되면 다음 블록을 미리 예약한다, 0 이면 미리 예약하지 않는다
+     * @param prefix            nextMemberId 앞에 붙일 문자열
+     */
+    public HiLoIdGenerator(IdBlockSource source, int blockSize, int prefetchThreshold, String prefix) {
+        Assert.isTrue(blockSize > 0, "blockSize 는 0보다 커야 합니다");
+        Assert.isTrue(prefetchThreshold >= 0 && prefetchThreshold <= blockSize,
+                "prefetchThreshold 는 0 ~ blockSize 이어야 합니다");
+        Assert.isTrue(prefix.length() < MAX_ID_LENGTH, "prefix 가 너무 깁니다");
+        this.source = source;
+        this.blockSize = blockSize;
+        this.prefetchThreshold = prefetchThreshold;
+        this.prefix = prefix;
+        this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "id-block-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long nextValue() {
+        while (true) {
+            Block block = current;
+            if (block != null) {
+                long value = block.next.getAndIncrement();
+                if (value < block.end) {
+                    // 정확히 한 스레드만 이 값을 받는다
+                    if (block.end - value == prefetchThreshold) {
+                        prefetch(block);
+                    }
+                    return value;
+                }
+            }
+            advance(block);
+        }
+    }
+
+    /**
+     * member_id varchar(10) 에 맞춘 문자열 - prefix + 36진수
+     */
+    public String nextMemberId() {
+        String memberId = prefix + Long.toString(nextValue(), Character.MAX_RADIX);
+        if (memberId.length() > MAX_ID_LENGTH) {
+            throw new IllegalStateException("회원 id 범위를 넘었습니다 memberId=" + memberId);
+        }
+        return memberId;
+    }
+
+    private synchronized void prefetch(Block block) {
+        if (prefetched == null && current == block) {
+            prefetched = CompletableFuture.supplyAsync(this::reserve, prefetcher);
+        }
+    }
+
+    // 다 쓴 블록을 다음 블록으로 바꾼다 - 먼저 들어온 스레드 하나만 바꾸고 나머지는 새 블록에서 다시 받는다
+    private synchronized void advance(Block exhausted) {
+        if (current != exhausted) {
+            return;
+        }
+        CompletableFuture<Long> next = prefetched;
+        prefetched = null;
+        long start = next == null ? reserveNow() : await(next);
+        current = new Block(start, start + blockSize);
+    }
+
+    private long await(CompletableFuture<Long> next) {
+        if (next.isDone() && !next.isCompletedExceptionally()) {
+            prefetchHits.increment();
+            return next.join();
+        }
+        waits.increment();
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("id 블록 예약 대기 중 인터럽트", e);
+        } catch (ExecutionException e) {
+            log.warn("id 블록 미리 예약 실패, 다시 예약", e.getCause());
+            return reserve();
+        }
+    }
+
+    private long reserveNow() {
+        waits.increment();
+        return reserve();
+    }
+
+    private long reserve() {
+        long start = source.reserve(blockSize);
+        reservedBlocks.increment();
+        log.debug("id block reserved start={}, size={}", start, blockSize);
+        return start;
+    }
+
+    public long getReservedBlockCount() {
+        return reservedBlocks.sum();
+    }
+
+    // 블록을 바꿀 때 미리 예약한 블록이 이미 준비돼 있던 횟수
+    public long getPrefetchHitCount() {
+        return prefetchHits.sum();
+    }
+
+    // 블록을 바꿀 때 예약을 기다린 횟수
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    private static class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
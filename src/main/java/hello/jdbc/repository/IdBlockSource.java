@@ -0,0 +1,10 @@
+package hello.jdbc.repository;
+
+/**
+ * id 블록을 예약하는 곳 (hi/lo 의 hi)
+ * 반환한 블록 [start, start + blockSize) 은 다른 노드, 다른 호출과 겹치지 않아야 한다
+ */
+public interface IdBlockSource {
+
+    long reserve(int blockSize);
+}
@@ -0,0 +1,82 @@
+package hello.jdbc.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * where member_id in (?, ?, ...) 쿼리 모양 관리
+ * 청크 크기를 2의 거듭제곱(1, 2, 4 ... MAX_CHUNK)으로 올려서 맞추기 때문에
+ * SQL 문자열 종류가 몇 개로 고정되고, DB 쪽 쿼리 캐시도 같은 모양을 계속 재사용한다
+ */
+final class InListSql {
+
+    static final int MAX_CHUNK = 256;
+
+    private static final String[] SELECT_BY_IDS = new String[Integer.numberOfTrailingZeros(MAX_CHUNK) + 1];
+    private static final String[] SELECT_BY_IDS_FOR_UPDATE = new String[SELECT_BY_IDS.length];
+
+    private InListSql() {
+    }
+
+    /**
+     * size 개를 담을 수 있는 가장 작은 모양(2의 거듭제곱)
+     */
+    static int shapeOf(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    static String selectByIds(int shape) {
+        int index = Integer.numberOfTrailingZeros(shape);
+        String sql = SELECT_BY_IDS[index];
+        if (sql == null) {
+            // 경쟁이 나도 같은 문자열을 만들 뿐이라 동기화하지 않는다
+            sql = "select * from member where member_id in (" + placeholders(shape) + ")";
+            SELECT_BY_IDS[index] = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * member_id 순서로 읽으면서 잠근다
+     * 모든 트랜잭션이 같은 순서로 잠그기 때문에 서로 상대의 락을 기다리는 교착 상태가 생기지 않는다
+     */
+    static String selectByIdsForUpdate(int shape) {
+        int index = Integer.numberOfTrailingZeros(shape);
+        String sql = SELECT_BY_IDS_FOR_UPDATE[index];
+        if (sql == null) {
+            sql = "select * from member where member_id in (" + placeholders(shape) + ") order by member_id for update";
+            SELECT_BY_IDS_FOR_UPDATE[index] = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * ids[from, from + size) 를 바인딩하고 남는 자리는 마지막 id 로 채운다
+     * in 절에서 중복 값은 결과에 영향이 없다
+     */
+    static void bind(PreparedStatement pstmt, List<String> ids, int from, int size, int shape) throws SQLException {
+        for (int i = 0; i < shape; i++) {
+            pstmt.setString(i + 1, ids.get(from + Math.min(i, size - 1)));
+        }
+    }
+
+    static Object[] args(List<String> ids, int from, int size, int shape) {
+        Object[] args = new Object[shape];
+        for (int i = 0; i < shape; i++) {
+            args[i] = ids.get(from + Math.min(i, size - 1));
+        }
+        return args;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
@@ -3,9 +3,45 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
 public interface MemberRepository {
     Member save(Member member);
     Member findById(String memberId);
     void update(String memberId, int money);
+    //낙관적 락 - version 이 그대로일 때만 변경, 아니면 MyOptimisticLockException
+    void update(String memberId, int money, long version);
     void delete(String memberId);
-}
\ No newline at end of file
+
+    //대량 처리 - JDBC 배치, memberIds[i] 와 moneys[i] 가 한 쌍이다
+    void saveAll(String[] memberIds, int[] moneys);
+    void updateAll(String[] memberIds, int[] moneys);
+    void deleteAll(String[] memberIds);
+
+    //여러 회원 조회 - 없는 회원은 결과 Map 에 들어있지 않다
+    Map<String, Member> findByIds(Collection<String> memberIds);
+
+    //비관적 락 - 트랜잭션 안에서 호출해야 한다, member_id 순서로 잠근다
+    Map<String, Member> findByIdsForUpdate(Collection<String> memberIds);
+
+    //전체 조회 - 결과를 메모리에 올리지 않고 커서로 한 건씩 흘려보낸다
+    //Stream 은 반드시 닫아야 커넥션이 반납된다 (try-with-resources)
+    Stream<Member> streamAll();
+    void forEach(Consumer<Member> action);
+
+    //읽지 않고 SQL 안에서 잔액을 바꾼다 - 변경된 행 수로 회원이 있는지 확인한다
+    int increment(String memberId, int delta);
+    boolean debitIfSufficient(String memberId, int amount);
+
+    //여러 회원의 잔액을 배치로 증감 - 반환값[i] 는 memberIds[i] 로 변경된 행 수 (0 이면 회원 없음)
+    //여러 트랜잭션이 겹치는 회원을 바꾼다면 memberIds 를 정렬해서 넘겨야 교착 상태가 생기지 않는다
+    int[] incrementAll(String[] memberIds, int[] deltas);
+
+    //있으면 잔액을 바꾸고(version 증가) 없으면 새로 넣는다 - 키 중복 예외 없이 한 번에 처리한다
+    UpsertOutcome upsert(Member member);
+    //반환값[i] 는 memberIds[i] 의 결과, memberIds 에 같은 id 가 두 번 있으면 안 된다 (JDBC 구현은 IllegalArgumentException)
+    UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys);
+}
@@ -3,16 +3,20 @@ package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.ex.MyDbException;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
-import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
 import java.sql.*;
-import java.util.NoSuchElementException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * SQLExceptionTranslator 추가
@@ -26,12 +30,42 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV4_2 implements MemberRepository{
 
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
     private final DataSource dataSource;
     private final SQLExceptionTranslator exTranslator;
+    private final int batchSize;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int lockTimeoutSeconds;
 
     public MemberRepositoryV4_2(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, int batchSize) {
+        // DB 메타데이터는 처음 변환할 때 한 번만 읽고, 키 중복은 스택 트레이스 없이 만든다
+        this(dataSource, batchSize, new ErrorCodeExceptionTranslator(dataSource));
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, int batchSize, SQLExceptionTranslator exTranslator) {
+        Assert.isTrue(batchSize > 0, "batchSize 는 0보다 커야 합니다");
         this.dataSource = dataSource;
-        this.exTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        this.exTranslator = exTranslator;
+        this.batchSize = batchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "fetchSize 는 0보다 커야 합니다");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * 락 대기 시간(초) - 넘기면 쿼리가 취소된다, 0 이면 DB 기본값(H2 는 LOCK_TIMEOUT)을 따른다
+     */
+    public void setLockTimeoutSeconds(int lockTimeoutSeconds) {
+        Assert.isTrue(lockTimeoutSeconds >= 0, "lockTimeoutSeconds 는 0 이상이어야 합니다");
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
     }
 
     @Override
@@ -80,6 +114,7 @@ public class MemberRepositoryV4_2 implements MemberRepository{
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
                 return member;
             } else  { // 못 찾으면 실행
                 throw new NoSuchElementException("member not found memberId=" + memberId);
@@ -93,7 +128,7 @@ public class MemberRepositoryV4_2 implements MemberRepository{
 
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -117,6 +152,32 @@ public class MemberRepositoryV4_2 implements MemberRepository{
         }
     }
 
+    @Override
+    public void update(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        int resultSize;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, money);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, version);
+            resultSize = pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw exTranslator.translate("update", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+
+        if (resultSize == 0) {
+            throw new MyOptimisticLockException("version 불일치 또는 회원 없음 memberId=" + memberId + ", version=" + version);
+        }
+    }
+
     @Override
     public void delete(String memberId) {
         String sql = "delete from member where member_id=?";
@@ -136,6 +197,328 @@ public class MemberRepositoryV4_2 implements MemberRepository{
         }
     }
 
+    @Override
+    public void saveAll(String[] memberIds, int[] moneys) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+
+        executeBatch("saveAll", sql, memberIds.length, (pstmt, i) -> {
+            pstmt.setString(1, memberIds[i]);
+            pstmt.setInt(2, moneys[i]);
+        });
+    }
+
+    @Override
+    public void updateAll(String[] memberIds, int[] moneys) {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+
+        executeBatch("updateAll", sql, memberIds.length, (pstmt, i) -> {
+            pstmt.setInt(1, moneys[i]);
+            pstmt.setString(2, memberIds[i]);
+        });
+    }
+
+    @Override
+    public void deleteAll(String[] memberIds) {
+        String sql = "delete from member where member_id=?";
+        executeBatch("deleteAll", sql, memberIds.length, (pstmt, i) -> pstmt.setString(1, memberIds[i]));
+    }
+
+    @Override
+    public int increment(String memberId, int delta) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw exTranslator.translate("increment", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    //잔액이 충분할 때만 차감한다 - 회원이 없거나 잔액이 부족하면 false
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setInt(1, amount);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, amount);
+            return pstmt.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw exTranslator.translate("debitIfSufficient", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    @Override
+    public int[] incrementAll(String[] memberIds, int[] deltas) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+        Assert.isTrue(memberIds.length == deltas.length, "memberIds, deltas 길이가 다릅니다");
+
+        return executeBatch("incrementAll", sql, memberIds.length, (pstmt, i) -> {
+            pstmt.setInt(1, deltas[i]);
+            pstmt.setString(2, memberIds[i]);
+        });
+    }
+
+    //merge 결과를 final table 로 받아서 넣었는지 바꿨는지 구분한다 - MergeSql 참고
+    @Override
+    public UpsertOutcome upsert(Member member) {
+        String sql = MergeSql.upsert(1);
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+            rs = pstmt.executeQuery();
+            rs.next();
+            return MergeSql.outcomeOf(rs.getLong("version"));
+        } catch (SQLException e) {
+            throw exTranslator.translate("upsert", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    @Override
+    public UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        MergeSql.checkUnique(memberIds);
+        Map<String, Long> versions = new HashMap<>(memberIds.length * 2);
+        String sql = null;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            for (int from = 0; from < memberIds.length; ) {
+                int rows = MergeSql.chunkOf(memberIds.length - from);
+                sql = MergeSql.upsert(rows);
+
+                pstmt = con.prepareStatement(sql);
+                MergeSql.bind(pstmt, memberIds, moneys, from, rows);
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    versions.put(rs.getString("member_id"), rs.getLong("version"));
+                }
+
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(pstmt);
+                rs = null;
+                pstmt = null;
+                from += rows;
+            }
+            return MergeSql.outcomes(memberIds, versions);
+        } catch (SQLException e) {
+            throw exTranslator.translate("upsertAll", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    //여러 회원 조회 - in 절을 청크 단위로 나눠서 조회
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        if (memberIds.isEmpty()) {
+            return result;
+        }
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds));
+        String sql = null;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            for (int from = 0; from < ids.size(); from += InListSql.MAX_CHUNK) {
+                int size = Math.min(InListSql.MAX_CHUNK, ids.size() - from);
+                int shape = InListSql.shapeOf(size);
+                sql = InListSql.selectByIds(shape);
+
+                pstmt = con.prepareStatement(sql);
+                InListSql.bind(pstmt, ids, from, size, shape);
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = new Member();
+                    member.setMemberId(rs.getString("member_id"));
+                    member.setMoney(rs.getInt("money"));
+                    member.setVersion(rs.getLong("version"));
+                    result.put(member.getMemberId(), member);
+                }
+
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(pstmt);
+                rs = null;
+                pstmt = null;
+            }
+            return result;
+        } catch (SQLException e) {
+            throw exTranslator.translate("findByIds", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    //비관적 락 - 정렬된 id 를 청크 순서대로 잠근다
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> ids = new ArrayList<>(new TreeSet<>(memberIds));
+        String sql = null;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            for (int from = 0; from < ids.size(); from += InListSql.MAX_CHUNK) {
+                int size = Math.min(InListSql.MAX_CHUNK, ids.size() - from);
+                int shape = InListSql.shapeOf(size);
+                sql = InListSql.selectByIdsForUpdate(shape);
+
+                pstmt = con.prepareStatement(sql);
+                pstmt.setQueryTimeout(lockTimeoutSeconds);
+                InListSql.bind(pstmt, ids, from, size, shape);
+                rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    Member member = new Member();
+                    member.setMemberId(rs.getString("member_id"));
+                    member.setMoney(rs.getInt("money"));
+                    member.setVersion(rs.getLong("version"));
+                    result.put(member.getMemberId(), member);
+                }
+
+                JdbcUtils.closeResultSet(rs);
+                JdbcUtils.closeStatement(pstmt);
+                rs = null;
+                pstmt = null;
+            }
+            return result;
+        } catch (SQLException e) {
+            throw exTranslator.translate("findByIdsForUpdate", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        String sql = "select * from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = prepareCursor(con, sql);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            close(con, pstmt, rs);
+            throw exTranslator.translate("streamAll", sql, e);
+        }
+
+        // 커넥션은 Stream 이 닫힐 때 반납한다
+        Connection cursorCon = con;
+        PreparedStatement cursorPstmt = pstmt;
+        ResultSet cursor = rs;
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                    Member member = new Member();
+                    member.setMemberId(cursor.getString("member_id"));
+                    member.setMoney(cursor.getInt("money"));
+                    member.setVersion(cursor.getLong("version"));
+                    action.accept(member);
+                    return true;
+                } catch (SQLException e) {
+                    throw exTranslator.translate("streamAll", sql, e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> close(cursorCon, cursorPstmt, cursor));
+    }
+
+    @Override
+    public void forEach(Consumer<Member> action) {
+        String sql = "select * from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            con = getConnection();
+            pstmt = prepareCursor(con, sql);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                action.accept(member);
+            }
+        } catch (SQLException e) {
+            throw exTranslator.translate("forEach", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+    // 앞으로만 읽는 읽기 전용 커서, fetchSize 만큼씩 나눠서 가져온다
+    private PreparedStatement prepareCursor(Connection con, String sql) throws SQLException {
+        PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        pstmt.setFetchSize(fetchSize);
+        return pstmt;
+    }
+
+    // 커넥션, PreparedStatement 하나로 전체를 처리하고 batchSize 단위로 끊어서 보낸다
+    private int[] executeBatch(String task, String sql, int size, BatchBinder binder) {
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+            return BatchBinder.execute(pstmt, size, batchSize, binder);
+        } catch (SQLException e) {
+            throw exTranslator.translate(task, sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     private void close(Connection con, Statement stmt, ResultSet rs) {
 
         JdbcUtils.closeResultSet(rs);
@@ -2,11 +2,21 @@ package hello.jdbc.repository;
 
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * JdbcTemplate 사용
@@ -15,12 +25,37 @@ import javax.sql.DataSource;
 public class MemberRepositoryV5 implements MemberRepository{
 
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
     private final JdbcTemplate template;
     // JdbcTemplate 은 JDBC로 개발할 때 발생하는 반복을 대부분 해결해준다. 그 뿐만 아니라 지금까지
     //학습했던, 트랜잭션을 위한 커넥션 동기화는 물론이고, 예외 발생시 스프링 예외 변환기도 자동으로 실행해준다.
+    private final int batchSize;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int lockTimeoutSeconds;
 
     public MemberRepositoryV5(DataSource dataSource) {
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV5(DataSource dataSource, int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize 는 0보다 커야 합니다");
         this.template = new JdbcTemplate(dataSource);
+        this.batchSize = batchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "fetchSize 는 0보다 커야 합니다");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * 락 대기 시간(초) - 넘기면 쿼리가 취소된다, 0 이면 DB 기본값(H2 는 LOCK_TIMEOUT)을 따른다
+     */
+    public void setLockTimeoutSeconds(int lockTimeoutSeconds) {
+        Assert.isTrue(lockTimeoutSeconds >= 0, "lockTimeoutSeconds 는 0 이상이어야 합니다");
+        this.lockTimeoutSeconds = lockTimeoutSeconds;
     }
 
     @Override
@@ -42,22 +77,181 @@ public class MemberRepositoryV5 implements MemberRepository{
 
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money=? where member_id=?";
+        String sql = "update member set money=?, version=version+1 where member_id=?";
         template.update(sql, money, memberId);
     }
 
+    @Override
+    public void update(String memberId, int money, long version) {
+        String sql = "update member set money=?, version=version+1 where member_id=? and version=?";
+        if (template.update(sql, money, memberId, version) == 0) {
+            throw new MyOptimisticLockException("version 불일치 또는 회원 없음 memberId=" + memberId + ", version=" + version);
+        }
+    }
+
     @Override
     public void delete(String memberId) {
         String sql = "delete from member where member_id=?";
         template.update(sql, memberId);
     }
 
+    @Override
+    public void saveAll(String[] memberIds, int[] moneys) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+
+        executeBatch(sql, memberIds.length, (pstmt, i) -> {
+            pstmt.setString(1, memberIds[i]);
+            pstmt.setInt(2, moneys[i]);
+        });
+    }
+
+    @Override
+    public void updateAll(String[] memberIds, int[] moneys) {
+        String sql = "update member set money=?, version=version+1 where member_id=?";
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+
+        executeBatch(sql, memberIds.length, (pstmt, i) -> {
+            pstmt.setInt(1, moneys[i]);
+            pstmt.setString(2, memberIds[i]);
+        });
+    }
+
+    @Override
+    public void deleteAll(String[] memberIds) {
+        String sql = "delete from member where member_id=?";
+        executeBatch(sql, memberIds.length, (pstmt, i) -> pstmt.setString(1, memberIds[i]));
+    }
+
+    @Override
+    public int increment(String memberId, int delta) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+        return template.update(sql, delta, memberId);
+    }
+
+    //잔액이 충분할 때만 차감한다 - 회원이 없거나 잔액이 부족하면 false
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        String sql = "update member set money = money - ?, version = version + 1 where member_id = ? and money >= ?";
+        return template.update(sql, amount, memberId, amount) == 1;
+    }
+
+    @Override
+    public int[] incrementAll(String[] memberIds, int[] deltas) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+        Assert.isTrue(memberIds.length == deltas.length, "memberIds, deltas 길이가 다릅니다");
+
+        return executeBatch(sql, memberIds.length, (pstmt, i) -> {
+            pstmt.setInt(1, deltas[i]);
+            pstmt.setString(2, memberIds[i]);
+        });
+    }
+
+    //merge 결과를 final table 로 받아서 넣었는지 바꿨는지 구분한다 - MergeSql 참고
+    @Override
+    public UpsertOutcome upsert(Member member) {
+        Long version = template.queryForObject(MergeSql.upsert(1), (rs, rowNum) -> rs.getLong("version"),
+                member.getMemberId(), member.getMoney());
+        return MergeSql.outcomeOf(version);
+    }
+
+    @Override
+    public UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        MergeSql.checkUnique(memberIds);
+        Map<String, Long> versions = new HashMap<>(memberIds.length * 2);
+
+        for (int from = 0; from < memberIds.length; ) {
+            int rows = MergeSql.chunkOf(memberIds.length - from);
+            template.query(MergeSql.upsert(rows),
+                    (RowCallbackHandler) rs -> versions.put(rs.getString("member_id"), rs.getLong("version")),
+                    MergeSql.args(memberIds, moneys, from, rows));
+            from += rows;
+        }
+        return MergeSql.outcomes(memberIds, versions);
+    }
+
+    //여러 회원 조회 - in 절을 청크 단위로 나눠서 조회
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds));
+        RowMapper<Member> rowMapper = memberRowMapper();
+
+        for (int from = 0; from < ids.size(); from += InListSql.MAX_CHUNK) {
+            int size = Math.min(InListSql.MAX_CHUNK, ids.size() - from);
+            int shape = InListSql.shapeOf(size);
+            template.query(InListSql.selectByIds(shape), (RowCallbackHandler) rs -> {
+                Member member = rowMapper.mapRow(rs, 0);
+                result.put(member.getMemberId(), member);
+            }, InListSql.args(ids, from, size, shape));
+        }
+        return result;
+    }
+
+    //비관적 락 - 정렬된 id 를 청크 순서대로 잠근다
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> ids = new ArrayList<>(new TreeSet<>(memberIds));
+        RowMapper<Member> rowMapper = memberRowMapper();
+
+        for (int from = 0; from < ids.size(); from += InListSql.MAX_CHUNK) {
+            int size = Math.min(InListSql.MAX_CHUNK, ids.size() - from);
+            int shape = InListSql.shapeOf(size);
+            Object[] args = InListSql.args(ids, from, size, shape);
+            template.query(con -> {
+                PreparedStatement pstmt = con.prepareStatement(InListSql.selectByIdsForUpdate(shape));
+                pstmt.setQueryTimeout(lockTimeoutSeconds);
+                for (int i = 0; i < args.length; i++) {
+                    pstmt.setString(i + 1, (String) args[i]);
+                }
+                return pstmt;
+            }, (RowCallbackHandler) rs -> {
+                Member member = rowMapper.mapRow(rs, 0);
+                result.put(member.getMemberId(), member);
+            });
+        }
+        return result;
+    }
+
+    // queryForStream 은 Stream 을 닫을 때 ResultSet, Statement 를 닫고 DataSourceUtils 로 커넥션을 반납한다
+    // 트랜잭션 안이라면 커넥션은 트랜잭션이 끝날 때까지 유지된다
+    @Override
+    public Stream<Member> streamAll() {
+        return template.queryForStream(cursorStatement(), memberRowMapper());
+    }
+
+    @Override
+    public void forEach(Consumer<Member> action) {
+        RowMapper<Member> rowMapper = memberRowMapper();
+        template.query(cursorStatement(), (RowCallbackHandler) rs -> action.accept(rowMapper.mapRow(rs, 0)));
+    }
+
+    // 앞으로만 읽는 읽기 전용 커서, fetchSize 만큼씩 나눠서 가져온다
+    private PreparedStatementCreator cursorStatement() {
+        String sql = "select * from member";
+        return con -> {
+            PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            return pstmt;
+        };
+    }
+
+    // batchUpdate(sql, BatchPreparedStatementSetter) 는 전체를 한 번에 보내므로
+    // PreparedStatement 하나를 재사용하면서 batchSize 단위로 직접 끊어서 보낸다
+    private int[] executeBatch(String sql, int size, BatchBinder binder) {
+        return template.execute(sql, (PreparedStatementCallback<int[]>) pstmt ->
+                BatchBinder.execute(pstmt, size, batchSize, binder));
+    }
+
     private RowMapper<Member> memberRowMapper() {
         // rs = resultSet
         return (rs, rowNum) -> {
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
@@ -0,0 +1,103 @@
+package hello.jdbc.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * upsert 쿼리 모양 관리
+ *
+ * merge using 을 final table 로 감싸서 바뀐 행의 version 을 같이 받는다
+ * 있던 행은 version 이 1 이상으로 올라가므로 version 0 이면 새로 넣은 행이다
+ * (H2 의 merge into ... key(...) values 는 넣었는지 바꿨는지 알려주지 않고 version 도 올릴 수 없다)
+ *
+ * merge 한 문장에 같은 행이 두 번 나오면 안 되므로 in 절처럼 남는 자리를 채울 수 없다
+ * 대신 행 수를 2의 거듭제곱 청크(MAX_CHUNK, ..., 2, 1)로 쪼개서 SQL 문자열 종류를 몇 개로 고정한다
+ */
+final class MergeSql {
+
+    static final int MAX_CHUNK = 256;
+
+    private static final String[] UPSERT = new String[Integer.numberOfTrailingZeros(MAX_CHUNK) + 1];
+
+    private MergeSql() {
+    }
+
+    /**
+     * 남은 행 수로 다음 청크 크기를 고른다 - 2의 거듭제곱
+     */
+    static int chunkOf(int remaining) {
+        return Math.min(MAX_CHUNK, Integer.highestOneBit(remaining));
+    }
+
+    static String upsert(int rows) {
+        int index = Integer.numberOfTrailingZeros(rows);
+        String sql = UPSERT[index];
+        if (sql == null) {
+            // 경쟁이 나도 같은 문자열을 만들 뿐이라 동기화하지 않는다
+            StringBuilder sb = new StringBuilder("select member_id, version from final table (")
+                    .append("merge into member t using (values ");
+            for (int i = 0; i < rows; i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append("(cast(? as varchar(10)), cast(? as integer))");
+            }
+            sb.append(") s(member_id, money) on t.member_id = s.member_id")
+                    .append(" when matched then update set money = s.money, version = t.version + 1")
+                    .append(" when not matched then insert (member_id, money) values (s.member_id, s.money))");
+            sql = sb.toString();
+            UPSERT[index] = sql;
+        }
+        return sql;
+    }
+
+    static void bind(PreparedStatement pstmt, String[] memberIds, int[] moneys, int from, int rows) throws SQLException {
+        for (int i = 0; i < rows; i++) {
+            pstmt.setString(i * 2 + 1, memberIds[from + i]);
+            pstmt.setInt(i * 2 + 2, moneys[from + i]);
+        }
+    }
+
+    static Object[] args(String[] memberIds, int[] moneys, int from, int rows) {
+        Object[] args = new Object[rows * 2];
+        for (int i = 0; i < rows; i++) {
+            args[i * 2] = memberIds[from + i];
+            args[i * 2 + 1] = moneys[from + i];
+        }
+        return args;
+    }
+
+    /**
+     * 같은 청크에 두 번 나오면 merge 가 실패하고, 다른 청크에 나오면 결과가 뒤의 것으로 덮인다 - 미리 막는다
+     */
+    static void checkUnique(String[] memberIds) {
+        Set<String> seen = new HashSet<>(memberIds.length * 2);
+        for (String memberId : memberIds) {
+            if (!seen.add(memberId)) {
+                throw new IllegalArgumentException("memberIds 에 같은 id 가 두 번 있습니다 memberId=" + memberId);
+            }
+        }
+    }
+
+    static UpsertOutcome outcomeOf(long version) {
+        return version == 0 ? UpsertOutcome.INSERTED : UpsertOutcome.UPDATED;
+    }
+
+    /**
+     * final table 결과는 순서가 정해져 있지 않으므로 member_id 로 맞춘다
+     */
+    static UpsertOutcome[] outcomes(String[] memberIds, Map<String, Long> versions) {
+        UpsertOutcome[] outcomes = new UpsertOutcome[memberIds.length];
+        for (int i = 0; i < memberIds.length; i++) {
+            Long version = versions.get(memberIds[i]);
+            if (version == null) {
+                throw new IllegalStateException("upsert 결과에 회원이 없습니다 memberId=" + memberIds[i]);
+            }
+            outcomes[i] = outcomeOf(version);
+        }
+        return outcomes;
+    }
+}
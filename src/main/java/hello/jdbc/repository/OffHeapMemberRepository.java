@@ -0,0 +1,578 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 힙 밖(direct ByteBuffer)의 해시 테이블에 잔액을 담는 MemberRepository
+ *
+ * 회원 수백만 명을 Member 객체로 들고 있으면 GC 가 그 객체들을 계속 훑어야 한다
+ * 여기서는 회원 하나가 고정 크기 슬롯(SLOT_SIZE 바이트) 하나라서 힙에는 ByteBuffer 하나만 남는다
+ * 오픈 어드레싱(선형 탐사), 지운 슬롯은 표시만 하고(tombstone) 다시 채울 때나 테이블을 키울 때 정리된다
+ *
+ * findMoney, increment 는 객체를 만들지 않는다 - String.hashCode 는 String 에 캐시되고 키는 charAt 으로 비교한다
+ * 읽기는 StampedLock 낙관적 읽기로 락 없이 읽고, 그 사이 쓰기가 있었으면 읽기 락으로 다시 읽는다
+ * 쓰기는 쓰기 락 하나로 순서대로 처리한다
+ *
+ * 트랜잭션은 없다 - JDBC 리포지토리에서 loadFrom 으로 읽어 오고 persistTo 로 돌려 쓴다
+ * member_id 는 varchar(10) 이므로 10자까지 담는다
+ */
+public class OffHeapMemberRepository implements MemberRepository {
+
+    public static final int MAX_KEY_CHARS = 10;
+
+    // 슬롯: hash(int) | length(short) | key(char * 10) | money(int) | version(long) | 여백
+    private static final int HASH = 0;
+    private static final int LENGTH = 4;
+    private static final int KEY = 6;
+    private static final int MONEY = KEY + MAX_KEY_CHARS * 2;
+    private static final int VERSION = MONEY + 4;
+    static final int SLOT_SIZE = 40;
+
+    private static final short EMPTY = 0;
+    private static final short DELETED = -1;
+
+    private static final double MAX_LOAD = 0.7;
+    private static final int MAX_CAPACITY = 1 << 25;
+    private static final int PERSIST_CHUNK = 1000;
+
+    private final StampedLock lock = new StampedLock();
+    private ByteBuffer table;
+    private int size;
+    private int used; // size + tombstone
+
+    /**
+     * @param expectedSize 담을 회원 수 - 넘으면 두 배로 키우며 다시 담는다
+     */
+    public OffHeapMemberRepository(int expectedSize) {
+        Assert.isTrue(expectedSize > 0, "expectedSize 는 0보다 커야 합니다");
+        this.table = allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int entries) {
+        long needed = (long) Math.ceil(entries / MAX_LOAD);
+        Assert.isTrue(needed <= MAX_CAPACITY, "너무 큽니다 entries=" + entries);
+        return Math.max(16, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    }
+
+    private static int hash(String memberId) {
+        int h = memberId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static void checkKey(String memberId) {
+        if (memberId.isEmpty() || memberId.length() > MAX_KEY_CHARS) {
+            throw new IllegalArgumentException("memberId 는 1 ~ " + MAX_KEY_CHARS + "자여야 합니다 memberId=" + memberId);
+        }
+    }
+
+    // 슬롯 시작 위치, 없으면 -1
+    private static int find(ByteBuffer t, String memberId, int hash) {
+        int capacity = t.capacity() / SLOT_SIZE;
+        int mask = capacity - 1;
+        int index = hash & mask;
+        for (int probe = 0; probe < capacity; probe++) {
+            int base = index * SLOT_SIZE;
+            short length = t.getShort(base + LENGTH);
+            if (length == EMPTY) {
+                return -1;
+            }
+            if (length == memberId.length() && t.getInt(base + HASH) == hash && keyEquals(t, base, memberId)) {
+                return base;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean keyEquals(ByteBuffer t, int base, String memberId) {
+        for (int i = 0; i < memberId.length(); i++) {
+            if (t.getChar(base + KEY + i * 2) != memberId.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String keyAt(ByteBuffer t, int base) {
+        char[] chars = new char[t.getShort(base + LENGTH)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = t.getChar(base + KEY + i * 2);
+        }
+        return new String(chars);
+    }
+
+    private static Member memberAt(ByteBuffer t, int base) {
+        return new Member(keyAt(t, base), t.getInt(base + MONEY), t.getLong(base + VERSION));
+    }
+
+    /**
+     * 잔액 - 객체를 만들지 않는다, 없으면 NoSuchElementException
+     */
+    public int findMoney(String memberId) {
+        int hash = hash(memberId);
+        long stamp = lock.tryOptimisticRead();
+        ByteBuffer t = table;
+        int base = find(t, memberId, hash);
+        int money = base < 0 ? 0 : t.getInt(base + MONEY);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                t = table;
+                base = find(t, memberId, hash);
+                money = base < 0 ? 0 : t.getInt(base + MONEY);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (base < 0) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return money;
+    }
+
+    public boolean contains(String memberId) {
+        int hash = hash(memberId);
+        long stamp = lock.tryOptimisticRead();
+        boolean found = find(table, memberId, hash) >= 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = find(table, memberId, hash) >= 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    // 쓰기 락 안에서 - 넣을 슬롯을 찾는다, 이미 있으면 그 슬롯
+    private int slotFor(String memberId, int hash) {
+        if (used + 1 > (table.capacity() / SLOT_SIZE) * MAX_LOAD) {
+            rehash(size + 1);
+        }
+        int capacity = table.capacity() / SLOT_SIZE;
+        int mask = capacity - 1;
+        int index = hash & mask;
+        int tombstone = -1;
+        for (int probe = 0; probe < capacity; probe++) {
+            int base = index * SLOT_SIZE;
+            short length = table.getShort(base + LENGTH);
+            if (length == EMPTY) {
+                return tombstone >= 0 ? tombstone : base;
+            }
+            if (length == DELETED) {
+                if (tombstone < 0) {
+                    tombstone = base;
+                }
+            } else if (length == memberId.length() && table.getInt(base + HASH) == hash && keyEquals(table, base, memberId)) {
+                return base;
+            }
+            index = (index + 1) & mask;
+        }
+        return tombstone;
+    }
+
+    // 쓰기 락 안에서 - 빈 슬롯에 새로 쓴다
+    private void insertAt(int base, String memberId, int hash, int money, long version) {
+        if (table.getShort(base + LENGTH) == EMPTY) {
+            used++;
+        }
+        size++;
+        table.putInt(base + HASH, hash);
+        table.putShort(base + LENGTH, (short) memberId.length());
+        for (int i = 0; i < memberId.length(); i++) {
+            table.putChar(base + KEY + i * 2, memberId.charAt(i));
+        }
+        table.putInt(base + MONEY, money);
+        table.putLong(base + VERSION, version);
+    }
+
+    private boolean occupied(int base) {
+        return table.getShort(base + LENGTH) > 0;
+    }
+
+    // 지운 슬롯을 정리하면서 entries 개가 들어가는 크기로 다시 담는다
+    private void rehash(int entries) {
+        ByteBuffer old = table;
+        ByteBuffer next = allocate(capacityFor(Math.max(entries, size) * 2));
+        int mask = next.capacity() / SLOT_SIZE - 1;
+        for (int base = 0; base < old.capacity(); base += SLOT_SIZE) {
+            if (old.getShort(base + LENGTH) <= 0) {
+                continue;
+            }
+            int index = old.getInt(base + HASH) & mask;
+            while (next.getShort(index * SLOT_SIZE + LENGTH) != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            for (int i = 0; i < SLOT_SIZE; i += 8) {
+                next.putLong(index * SLOT_SIZE + i, old.getLong(base + i));
+            }
+        }
+        table = next;
+        used = size;
+    }
+
+    @Override
+    public Member save(Member member) {
+        String memberId = member.getMemberId();
+        checkKey(memberId);
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            int base = slotFor(memberId, hash);
+            if (occupied(base)) {
+                throw new DuplicateKeyException("이미 있는 회원 memberId=" + memberId);
+            }
+            insertAt(base, memberId, hash, member.getMoney(), 0);
+            return member;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        int hash = hash(memberId);
+        long stamp = lock.readLock();
+        try {
+            int base = find(table, memberId, hash);
+            if (base < 0) {
+                throw new NoSuchElementException("member not found memberId=" + memberId);
+            }
+            return memberAt(table, base);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            int base = find(table, memberId, hash);
+            if (base >= 0) {
+                table.putInt(base + MONEY, money);
+                table.putLong(base + VERSION, table.getLong(base + VERSION) + 1);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money, long version) {
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            int base = find(table, memberId, hash);
+            if (base < 0 || table.getLong(base + VERSION) != version) {
+                throw new MyOptimisticLockException("version 불일치 또는 회원 없음 memberId=" + memberId + ", version=" + version);
+            }
+            table.putInt(base + MONEY, money);
+            table.putLong(base + VERSION, version + 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            remove(memberId, hash);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void remove(String memberId, int hash) {
+        int base = find(table, memberId, hash);
+        if (base >= 0) {
+            table.putShort(base + LENGTH, DELETED);
+            size--;
+        }
+    }
+
+    /**
+     * 객체를 만들지 않는다 - 반환값은 변경된 회원 수 (0 이면 회원 없음)
+     */
+    @Override
+    public int increment(String memberId, int delta) {
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            int base = find(table, memberId, hash);
+            if (base < 0) {
+                return 0;
+            }
+            table.putInt(base + MONEY, table.getInt(base + MONEY) + delta);
+            table.putLong(base + VERSION, table.getLong(base + VERSION) + 1);
+            return 1;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            int base = find(table, memberId, hash);
+            if (base < 0 || table.getInt(base + MONEY) < amount) {
+                return false;
+            }
+            table.putInt(base + MONEY, table.getInt(base + MONEY) - amount);
+            table.putLong(base + VERSION, table.getLong(base + VERSION) + 1);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public UpsertOutcome upsert(Member member) {
+        String memberId = member.getMemberId();
+        checkKey(memberId);
+        int hash = hash(memberId);
+        long stamp = lock.writeLock();
+        try {
+            return upsert(memberId, hash, member.getMoney());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private UpsertOutcome upsert(String memberId, int hash, int money) {
+        int base = slotFor(memberId, hash);
+        if (occupied(base)) {
+            table.putInt(base + MONEY, money);
+            table.putLong(base + VERSION, table.getLong(base + VERSION) + 1);
+            return UpsertOutcome.UPDATED;
+        }
+        insertAt(base, memberId, hash, money, 0);
+        return UpsertOutcome.INSERTED;
+    }
+
+    @Override
+    public void saveAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        for (int i = 0; i < memberIds.length; i++) {
+            save(new Member(memberIds[i], moneys[i]));
+        }
+    }
+
+    @Override
+    public void updateAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        for (int i = 0; i < memberIds.length; i++) {
+            update(memberIds[i], moneys[i]);
+        }
+    }
+
+    @Override
+    public void deleteAll(String[] memberIds) {
+        long stamp = lock.writeLock();
+        try {
+            for (String memberId : memberIds) {
+                remove(memberId, hash(memberId));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int[] incrementAll(String[] memberIds, int[] deltas) {
+        Assert.isTrue(memberIds.length == deltas.length, "memberIds, deltas 길이가 다릅니다");
+        int[] counts = new int[memberIds.length];
+        for (int i = 0; i < memberIds.length; i++) {
+            counts[i] = increment(memberIds[i], deltas[i]);
+        }
+        return counts;
+    }
+
+    @Override
+    public UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        for (String memberId : memberIds) {
+            checkKey(memberId);
+        }
+        UpsertOutcome[] outcomes = new UpsertOutcome[memberIds.length];
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < memberIds.length; i++) {
+                outcomes[i] = upsert(memberIds[i], hash(memberIds[i]), moneys[i]);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return outcomes;
+    }
+
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        long stamp = lock.readLock();
+        try {
+            for (String memberId : memberIds) {
+                int base = find(table, memberId, hash(memberId));
+                if (base >= 0) {
+                    result.put(memberId, memberAt(table, base));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    //행 락이 없다 - findByIds 와 같다
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        return findByIds(memberIds);
+    }
+
+    /**
+     * 슬롯을 하나씩 읽기 락으로 읽는다 - 도는 동안의 변경은 보일 수도 안 보일 수도 있다
+     * 처음 읽을 때의 테이블을 끝까지 읽는다 - 도중에 테이블을 키워도(rehash) 예전 테이블은 그대로 남으므로
+     * 자리가 바뀐 회원을 건너뛰거나 두 번 읽지 않는다 (키운 뒤의 변경은 보이지 않는다)
+     */
+    @Override
+    public Stream<Member> streamAll() {
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.NONNULL) {
+            private ByteBuffer snapshot;
+            private int slot;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                while (true) {
+                    Member member;
+                    long stamp = lock.readLock();
+                    try {
+                        if (snapshot == null) {
+                            snapshot = table;
+                        }
+                        int base = slot * SLOT_SIZE;
+                        if (base >= snapshot.capacity()) {
+                            return false;
+                        }
+                        slot++;
+                        member = snapshot.getShort(base + LENGTH) > 0 ? memberAt(snapshot, base) : null;
+                    } finally {
+                        lock.unlockRead(stamp);
+                    }
+                    if (member != null) {
+                        action.accept(member);
+                        return true;
+                    }
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    @Override
+    public void forEach(Consumer<Member> action) {
+        try (Stream<Member> stream = streamAll()) {
+            stream.forEach(action);
+        }
+    }
+
+    /**
+     * JDBC 리포지토리의 회원을 모두 담는다 - 커서로 한 건씩 읽으므로 전체를 힙에 올리지 않는다
+     * 이미 있는 회원은 DB 값으로 덮는다
+     */
+    public void loadFrom(MemberRepository source) {
+        source.forEach(member -> {
+            checkKey(member.getMemberId());
+            int hash = hash(member.getMemberId());
+            long stamp = lock.writeLock();
+            try {
+                int base = slotFor(member.getMemberId(), hash);
+                if (occupied(base)) {
+                    table.putInt(base + MONEY, member.getMoney());
+                    table.putLong(base + VERSION, member.getVersion());
+                } else {
+                    insertAt(base, member.getMemberId(), hash, member.getMoney(), member.getVersion());
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        });
+    }
+
+    /**
+     * 담긴 잔액을 JDBC 리포지토리에 PERSIST_CHUNK 개씩 upsertAll 로 쓴다
+     * 도는 동안 지웠다 다시 넣은 회원은 두 번 나올 수 있다 - 청크 안에서는 뒤의 값 하나로 합친다
+     */
+    public void persistTo(MemberRepository target) {
+        Map<String, Integer> chunk = new LinkedHashMap<>(PERSIST_CHUNK * 2);
+        try (Stream<Member> stream = streamAll()) {
+            stream.forEach(member -> {
+                chunk.put(member.getMemberId(), member.getMoney());
+                if (chunk.size() == PERSIST_CHUNK) {
+                    flushChunk(target, chunk);
+                }
+            });
+        }
+        if (!chunk.isEmpty()) {
+            flushChunk(target, chunk);
+        }
+    }
+
+    private static void flushChunk(MemberRepository target, Map<String, Integer> chunk) {
+        String[] memberIds = new String[chunk.size()];
+        int[] values = new int[chunk.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : chunk.entrySet()) {
+            memberIds[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        target.upsertAll(memberIds, values);
+        chunk.clear();
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // 힙 밖에 잡은 바이트 수
+    public long getOffHeapBytes() {
+        long stamp = lock.readLock();
+        try {
+            return table.capacity();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
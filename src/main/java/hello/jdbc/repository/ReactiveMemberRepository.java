@@ -0,0 +1,122 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * R2DBC 사용 - MemberRepositoryV5 의 리액티브 버전
+ *
+ * DatabaseClient 는 JdbcTemplate 처럼 커넥션 획득/반납과 예외 변환(DataAccessException)을 해주고,
+ * TransactionalOperator 로 시작한 트랜잭션이 있으면 Reactor Context 에 묶인 커넥션을 쓴다
+ * 모든 메서드는 구독할 때 실행된다
+ */
+public class ReactiveMemberRepository {
+
+    private final DatabaseClient client;
+
+    public ReactiveMemberRepository(ConnectionFactory connectionFactory) {
+        this.client = DatabaseClient.create(connectionFactory);
+    }
+
+    public Mono<Member> save(Member member) {
+        String sql = "insert into member(member_id, money) values (:memberId, :money)";
+        return client.sql(sql)
+                .bind("memberId", member.getMemberId())
+                .bind("money", member.getMoney())
+                .fetch().rowsUpdated()
+                .thenReturn(member);
+    }
+
+    // 없으면 NoSuchElementException
+    public Mono<Member> findById(String memberId) {
+        String sql = "select * from member where member_id = :memberId";
+        return client.sql(sql)
+                .bind("memberId", memberId)
+                .map(this::mapMember)
+                .one()
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException("member not found memberId=" + memberId)));
+    }
+
+    // 없는 회원은 결과에 없다
+    public Flux<Member> findByIds(Collection<String> memberIds) {
+        String sql = "select * from member where member_id in (:memberIds)";
+        return client.sql(sql)
+                .bind("memberIds", memberIds)
+                .map(this::mapMember)
+                .all();
+    }
+
+    public Flux<Member> findAll() {
+        return client.sql("select * from member")
+                .map(this::mapMember)
+                .all();
+    }
+
+    public Mono<Void> update(String memberId, int money) {
+        String sql = "update member set money = :money, version = version + 1 where member_id = :memberId";
+        return client.sql(sql)
+                .bind("money", money)
+                .bind("memberId", memberId)
+                .fetch().rowsUpdated()
+                .then();
+    }
+
+    //낙관적 락 - version 이 그대로일 때만 변경, 아니면 MyOptimisticLockException
+    public Mono<Void> update(String memberId, int money, long version) {
+        String sql = "update member set money = :money, version = version + 1"
+                + " where member_id = :memberId and version = :version";
+        return client.sql(sql)
+                .bind("money", money)
+                .bind("memberId", memberId)
+                .bind("version", version)
+                .fetch().rowsUpdated()
+                .flatMap(count -> count == 0
+                        ? Mono.error(new MyOptimisticLockException("version 불일치 또는 회원 없음 memberId=" + memberId
+                        + ", version=" + version))
+                        : Mono.empty());
+    }
+
+    public Mono<Void> delete(String memberId) {
+        return client.sql("delete from member where member_id = :memberId")
+                .bind("memberId", memberId)
+                .fetch().rowsUpdated()
+                .then();
+    }
+
+    //읽지 않고 SQL 안에서 잔액을 바꾼다 - 변경된 행 수로 회원이 있는지 확인한다
+    public Mono<Integer> increment(String memberId, int delta) {
+        String sql = "update member set money = money + :delta, version = version + 1 where member_id = :memberId";
+        return client.sql(sql)
+                .bind("delta", delta)
+                .bind("memberId", memberId)
+                .fetch().rowsUpdated();
+    }
+
+    //잔액이 충분할 때만 차감한다 - 회원이 없거나 잔액이 부족하면 false
+    public Mono<Boolean> debitIfSufficient(String memberId, int amount) {
+        String sql = "update member set money = money - :amount, version = version + 1"
+                + " where member_id = :memberId and money >= :amount";
+        return client.sql(sql)
+                .bind("amount", amount)
+                .bind("memberId", memberId)
+                .fetch().rowsUpdated()
+                .map(count -> count == 1);
+    }
+
+    private Member mapMember(Row row, RowMetadata metadata) {
+        Member member = new Member();
+        member.setMemberId(row.get("member_id", String.class));
+        member.setMoney(row.get("money", Integer.class));
+        member.setVersion(row.get("version", Long.class));
+        return member;
+    }
+}
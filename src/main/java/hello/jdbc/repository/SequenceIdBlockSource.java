@@ -0,0 +1,42 @@
+package hello.jdbc.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+
+/**
+ * DB 시퀀스로 블록을 예약한다 - 시퀀스 값 hi 하나가 블록 [hi * blockSize, (hi + 1) * blockSize)
+ *
+ * 시퀀스는 트랜잭션이 롤백되어도 되돌아가지 않으므로 한 번 받은 블록은 다시 나오지 않는다
+ * 같은 시퀀스를 쓰는 모든 노드는 같은 blockSize 를 써야 한다 - 크기가 다른 노드가 섞이면(배포 중 등)
+ * 1000 짜리 hi=2 의 [2000, 3000) 과 100 짜리 hi=20 의 [2000, 2100) 처럼 블록이 겹친다
+ * 그래서 blockSize 는 생성할 때 정하고 다른 크기의 예약은 거절한다 - 크기를 바꾸려면 시퀀스도 새로 쓴다
+ */
+public class SequenceIdBlockSource implements IdBlockSource {
+
+    public static final String DEFAULT_SEQUENCE = "member_id_seq";
+
+    private final JdbcTemplate template;
+    private final String sql;
+    private final int blockSize;
+
+    public SequenceIdBlockSource(DataSource dataSource, int blockSize) {
+        this(dataSource, DEFAULT_SEQUENCE, blockSize);
+    }
+
+    public SequenceIdBlockSource(DataSource dataSource, String sequenceName, int blockSize) {
+        Assert.isTrue(blockSize > 0, "blockSize 는 0보다 커야 합니다");
+        this.template = new JdbcTemplate(dataSource);
+        this.sql = "select next value for " + sequenceName;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long reserve(int blockSize) {
+        Assert.isTrue(blockSize == this.blockSize,
+                "이 시퀀스의 blockSize 는 " + this.blockSize + " 입니다 요청=" + blockSize);
+        Long hi = template.queryForObject(sql, Long.class);
+        return Math.multiplyExact(hi, (long) blockSize);
+    }
+}
@@ -0,0 +1,13 @@
+package hello.jdbc.repository;
+
+/**
+ * 회원이 어느 샤드에 있는지 정한다
+ * 같은 memberId 는 항상 같은 샤드여야 한다 - 바꾸려면 데이터를 옮겨야 한다
+ */
+public interface ShardRouter {
+
+    int shardCount();
+
+    // 0 ~ shardCount() - 1
+    int shardOf(String memberId);
+}
@@ -0,0 +1,242 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 회원을 여러 DB 에 나눠 담는 MemberRepository - 샤드마다 리포지토리 하나(MemberRepositoryV5 등)
+ *
+ * 한 회원 작업은 ShardRouter 가 고른 샤드로 보내고, 여러 회원 작업은 샤드별로 나눠 보낸 뒤 결과를 원래 순서로 모은다
+ * 트랜잭션은 샤드(DataSource)마다 따로다 - 여러 샤드에 걸친 작업은 하나로 묶이지 않는다
+ * 샤드를 넘나드는 이체는 ShardedTransferService 를 쓴다
+ */
+public class ShardedMemberRepository implements MemberRepository {
+
+    private final MemberRepository[] shards;
+    private final ShardRouter router;
+
+    /**
+     * @param shards shards.get(i) 가 router 의 i 번 샤드
+     */
+    public ShardedMemberRepository(List<MemberRepository> shards, ShardRouter router) {
+        Assert.isTrue(shards.size() == router.shardCount(), "샤드 수와 router.shardCount() 가 다릅니다");
+        this.shards = shards.toArray(new MemberRepository[0]);
+        this.router = router;
+    }
+
+    public ShardRouter getRouter() {
+        return router;
+    }
+
+    public int shardOf(String memberId) {
+        return router.shardOf(memberId);
+    }
+
+    public MemberRepository shard(int index) {
+        return shards[index];
+    }
+
+    private MemberRepository route(String memberId) {
+        return shards[router.shardOf(memberId)];
+    }
+
+    @Override
+    public Member save(Member member) {
+        return route(member.getMemberId()).save(member);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return route(memberId).findById(memberId);
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        route(memberId).update(memberId, money);
+    }
+
+    @Override
+    public void update(String memberId, int money, long version) {
+        route(memberId).update(memberId, money, version);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        route(memberId).delete(memberId);
+    }
+
+    @Override
+    public int increment(String memberId, int delta) {
+        return route(memberId).increment(memberId, delta);
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        return route(memberId).debitIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public UpsertOutcome upsert(Member member) {
+        return route(member.getMemberId()).upsert(member);
+    }
+
+    @Override
+    public void saveAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        int[][] partition = partition(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            if (partition[s].length > 0) {
+                shards[s].saveAll(pick(memberIds, partition[s]), pick(moneys, partition[s]));
+            }
+        }
+    }
+
+    @Override
+    public void updateAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        int[][] partition = partition(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            if (partition[s].length > 0) {
+                shards[s].updateAll(pick(memberIds, partition[s]), pick(moneys, partition[s]));
+            }
+        }
+    }
+
+    @Override
+    public void deleteAll(String[] memberIds) {
+        int[][] partition = partition(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            if (partition[s].length > 0) {
+                shards[s].deleteAll(pick(memberIds, partition[s]));
+            }
+        }
+    }
+
+    @Override
+    public int[] incrementAll(String[] memberIds, int[] deltas) {
+        Assert.isTrue(memberIds.length == deltas.length, "memberIds, deltas 길이가 다릅니다");
+        int[] counts = new int[memberIds.length];
+        int[][] partition = partition(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            int[] indexes = partition[s];
+            if (indexes.length > 0) {
+                int[] shardCounts = shards[s].incrementAll(pick(memberIds, indexes), pick(deltas, indexes));
+                for (int j = 0; j < indexes.length; j++) {
+                    counts[indexes[j]] = shardCounts[j];
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys) {
+        Assert.isTrue(memberIds.length == moneys.length, "memberIds, moneys 길이가 다릅니다");
+        UpsertOutcome[] outcomes = new UpsertOutcome[memberIds.length];
+        int[][] partition = partition(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            int[] indexes = partition[s];
+            if (indexes.length > 0) {
+                UpsertOutcome[] shardOutcomes = shards[s].upsertAll(pick(memberIds, indexes), pick(moneys, indexes));
+                for (int j = 0; j < indexes.length; j++) {
+                    outcomes[indexes[j]] = shardOutcomes[j];
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<List<String>> groups = group(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            if (!groups.get(s).isEmpty()) {
+                result.putAll(shards[s].findByIds(groups.get(s)));
+            }
+        }
+        return result;
+    }
+
+    //샤드 번호 순서, 샤드 안에서는 member_id 순서로 잠근다 - 샤드마다 그 샤드의 트랜잭션 안에서 호출해야 한다
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<List<String>> groups = group(memberIds);
+        for (int s = 0; s < shards.length; s++) {
+            if (!groups.get(s).isEmpty()) {
+                result.putAll(shards[s].findByIdsForUpdate(groups.get(s)));
+            }
+        }
+        return result;
+    }
+
+    //샤드를 차례로 읽는다 - 한 샤드를 다 읽으면 그 샤드의 커서를 닫고 다음 샤드를 연다
+    @Override
+    public Stream<Member> streamAll() {
+        return Arrays.stream(shards).flatMap(MemberRepository::streamAll);
+    }
+
+    @Override
+    public void forEach(Consumer<Member> action) {
+        for (MemberRepository shard : shards) {
+            shard.forEach(action);
+        }
+    }
+
+    // 샤드별 원래 인덱스 목록
+    private int[][] partition(String[] memberIds) {
+        int[] shardOf = new int[memberIds.length];
+        int[] counts = new int[shards.length];
+        for (int i = 0; i < memberIds.length; i++) {
+            shardOf[i] = router.shardOf(memberIds[i]);
+            counts[shardOf[i]]++;
+        }
+
+        int[][] partition = new int[shards.length][];
+        for (int s = 0; s < shards.length; s++) {
+            partition[s] = new int[counts[s]];
+        }
+        int[] filled = new int[shards.length];
+        for (int i = 0; i < memberIds.length; i++) {
+            partition[shardOf[i]][filled[shardOf[i]]++] = i;
+        }
+        return partition;
+    }
+
+    private List<List<String>> group(Collection<String> memberIds) {
+        List<List<String>> groups = new ArrayList<>(shards.length);
+        for (int s = 0; s < shards.length; s++) {
+            groups.add(new ArrayList<>());
+        }
+        for (String memberId : memberIds) {
+            groups.get(router.shardOf(memberId)).add(memberId);
+        }
+        return groups;
+    }
+
+    private static String[] pick(String[] values, int[] indexes) {
+        String[] picked = new String[indexes.length];
+        for (int j = 0; j < indexes.length; j++) {
+            picked[j] = values[indexes[j]];
+        }
+        return picked;
+    }
+
+    private static int[] pick(int[] values, int[] indexes) {
+        int[] picked = new int[indexes.length];
+        for (int j = 0; j < indexes.length; j++) {
+            picked[j] = values[indexes[j]];
+        }
+        return picked;
+    }
+}
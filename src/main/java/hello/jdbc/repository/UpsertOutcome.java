@@ -0,0 +1,9 @@
+package hello.jdbc.repository;
+
+/**
+ * upsert 결과 - 새로 넣었는지, 있던 행을 바꿨는지
+ */
+public enum UpsertOutcome {
+    INSERTED,
+    UPDATED
+}
@@ -0,0 +1,469 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.connection.LatencyHistogram;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 쓰기 지연(write-behind) - MemberRepository 데코레이터
+ *
+ * update(memberId, money) 는 메모리 버퍼에만 쓰고 바로 돌아온다
+ * 같은 회원을 여러 번 바꾸면 마지막 값 하나로 합쳐지고, flushSize 개가 쌓이거나 maxDelay 가 지나면
+ * updateAll(JDBC 배치 한 번)으로 반영한다
+ * 이 리포지토리로 읽으면 아직 반영하지 않은 값이 보인다
+ *
+ * 반영 전에 프로세스가 죽으면 버퍼의 값은 사라진다 - 포인트처럼 잠깐의 유실을 감수할 수 있는 잔액에만 쓴다
+ * 버퍼에 있는 회원을 다른 방법(increment, delete, 낙관적 락 update 등)으로 바꾸면 먼저 버퍼를 반영한다
+ *
+ * 반영은 언제나 반영 스레드가 자기 커넥션으로 한다 - flush() 를 부른 스레드는 끝날 때까지 기다리기만 한다
+ * 호출한 쪽의 트랜잭션에 섞이지 않으므로 그 트랜잭션이 롤백돼도 반영한 값은 남는다
+ * 대신 호출한 트랜잭션이 이미 잠근 회원을 반영해야 하면 반영 스레드가 락을 기다리다 실패한다
+ * 종료할 때 close() 로 남은 값을 반영한다 (스프링 빈이면 소멸할 때 호출된다) - 닫은 뒤의 update 는 RejectedExecutionException
+ */
+@Slf4j
+public class WriteBehindMemberRepository implements MemberRepository, AutoCloseable {
+
+    private final MemberRepository target;
+    private final int flushSize;
+    private final int capacity;
+    private final long maxDelayNanos;
+    private final long offerTimeoutNanos;
+
+    // 반영이 끝난 항목만 같은 객체일 때 지우므로, 반영 중에 새로 쓴 값은 남아서 다음 반영 때 나간다
+    private final Map<String, Pending> buffer = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushRequested = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Object flushMonitor = new Object();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    // lock 으로 보호 - flush() 가 올린 요청 번호를 반영 스레드가 처리하면 completed 로 옮긴다
+    private long requested;
+    private long completed;
+    private long failedRound = -1;
+    private RuntimeException failure;
+    private boolean stopped;
+
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder backpressureWaits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    /**
+     * @param flushSize    버퍼에 이만큼 쌓이면 바로 반영한다
+     * @param maxDelay     마지막 반영 후 이만큼 지나면 반영한다
+     * @param capacity     버퍼에 담을 수 있는 회원 수 (대략), 가득 차면 update 가 반영을 기다린다
+     * @param offerTimeout 가득 찼을 때 기다리는 최대 시간, 넘기면 RejectedExecutionException
+     */
+    public WriteBehindMemberRepository(MemberRepository target, int flushSize, Duration maxDelay,
+                                       int capacity, Duration offerTimeout) {
+        Assert.isTrue(flushSize > 0, "flushSize 는 0보다 커야 합니다");
+        Assert.isTrue(capacity >= flushSize, "capacity 는 flushSize 이상이어야 합니다");
+        this.target = target;
+        this.flushSize = flushSize;
+        this.capacity = capacity;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.offerTimeoutNanos = offerTimeout.toNanos();
+        this.flusher = new Thread(this::run, "write-behind-flush");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        if (!running) {
+            rejected.increment();
+            throw new RejectedExecutionException("write-behind 리포지토리가 닫혔습니다");
+        }
+        if (!buffer.containsKey(memberId) && buffer.size() >= capacity) {
+            awaitSpace();
+        }
+        if (buffer.put(memberId, new Pending(money)) != null) {
+            coalesced.increment();
+        }
+        int depth = buffer.size();
+        if (depth > maxDepth.get()) {
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+        if (depth >= flushSize) {
+            requestFlush();
+        } else if (!running) {
+            // 확인한 뒤에 close() 가 시작됐다 - 마지막 반영을 놓쳤을 수 있으니 직접 반영한다
+            flush();
+        }
+    }
+
+    // 가득 찼으면 반영을 요청하고 자리가 날 때까지 기다린다
+    private void awaitSpace() {
+        backpressureWaits.increment();
+        long remaining = offerTimeoutNanos;
+        lock.lock();
+        try {
+            while (buffer.size() >= capacity) {
+                if (remaining <= 0) {
+                    rejected.increment();
+                    throw new RejectedExecutionException("write-behind 버퍼가 가득 찼습니다 capacity=" + capacity);
+                }
+                flushRequested.signal();
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("write-behind 버퍼 대기 중 인터럽트", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void requestFlush() {
+        lock.lock();
+        try {
+            flushRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long round;
+            lock.lock();
+            try {
+                if (running && requested == completed && buffer.size() < flushSize) {
+                    flushRequested.awaitNanos(maxDelayNanos);
+                }
+            } catch (InterruptedException e) {
+                // 인터럽트돼도 반영은 마저 한다
+            } finally {
+                round = requested;
+                lock.unlock();
+            }
+
+            RuntimeException error = null;
+            try {
+                doFlush();
+            } catch (RuntimeException e) {
+                // 버퍼에 남아 있으므로 다음 반영 때 다시 시도한다
+                error = e;
+                flushFailures.increment();
+                log.error("write-behind 반영 실패, depth={}", buffer.size(), e);
+            }
+
+            lock.lock();
+            try {
+                completed = round;
+                if (error != null) {
+                    failure = error;
+                    failedRound = round;
+                }
+                flushed.signalAll();
+                // 기다리는 flush() 가 없을 때만 끝낸다 - 끝난 뒤에는 flush() 가 직접 반영한다
+                if (!running && requested == completed) {
+                    stopped = true;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 지금 버퍼에 있는 값을 모두 반영한다 - 반영 스레드에 맡기고 끝날 때까지 기다린다
+     * 반영이 실패하면 그 예외를 던진다
+     */
+    public void flush() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (!stopped) {
+                long round = ++requested;
+                flushRequested.signal();
+                while (completed < round) {
+                    flushed.await();
+                }
+                if (failedRound >= round) {
+                    throw failure;
+                }
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("write-behind 반영 대기 중 인터럽트", e);
+        } finally {
+            lock.unlock();
+        }
+        // close() 뒤 - 반영 스레드가 없으니 직접 반영한다
+        doFlush();
+    }
+
+    // 한 번에 하나씩만 반영한다
+    private void doFlush() {
+        synchronized (flushMonitor) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            List<Map.Entry<String, Pending>> snapshot = new ArrayList<>(buffer.entrySet());
+            String[] memberIds = new String[snapshot.size()];
+            int[] moneys = new int[snapshot.size()];
+            for (int i = 0; i < memberIds.length; i++) {
+                memberIds[i] = snapshot.get(i).getKey();
+                moneys[i] = snapshot.get(i).getValue().money;
+            }
+
+            long start = System.nanoTime();
+            target.updateAll(memberIds, moneys);
+            flushLatency.record(System.nanoTime() - start);
+            flushes.increment();
+            flushedRows.add(memberIds.length);
+
+            for (Map.Entry<String, Pending> entry : snapshot) {
+                buffer.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void flushIfBuffered(String memberId) {
+        if (buffer.containsKey(memberId)) {
+            flush();
+        }
+    }
+
+    private void flushIfBuffered(String[] memberIds) {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        for (String memberId : memberIds) {
+            if (buffer.containsKey(memberId)) {
+                flush();
+                return;
+            }
+        }
+    }
+
+    private void flushIfBuffered(Collection<String> memberIds) {
+        flushIfBuffered(memberIds.toArray(new String[0]));
+    }
+
+    // DB 에서 읽은 회원에 반영 전 값을 덮는다
+    // 읽기 전에 버퍼에 있던 회원이 지금 없으면 읽는 사이에 반영이 끝난 것 - DB 에서 읽은 값이 반영 전 값일 수 있으니 다시 읽는다
+    // 다시 읽는 사이에 지워졌으면 null
+    private Member overlay(Member member, boolean bufferedBefore) {
+        Pending pending = buffer.get(member.getMemberId());
+        if (pending != null) {
+            member.setMoney(pending.money);
+        } else if (bufferedBefore) {
+            return target.findByIds(List.of(member.getMemberId())).get(member.getMemberId());
+        }
+        return member;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        boolean bufferedBefore = buffer.containsKey(memberId);
+        Member member = overlay(target.findById(memberId), bufferedBefore);
+        // 다시 읽는 사이에 지워졌다 - 대상 리포지토리가 없는 회원에 던지는 예외를 그대로 던진다
+        return member != null ? member : target.findById(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findByIds(Collection<String> memberIds) {
+        Set<String> bufferedBefore = bufferedIds(memberIds);
+        Map<String, Member> members = target.findByIds(memberIds);
+        members.replaceAll((memberId, member) -> overlay(member, bufferedBefore.contains(memberId)));
+        members.values().removeIf(Objects::isNull);
+        return members;
+    }
+
+    //잠그고 읽는 값은 DB 와 같아야 하므로 먼저 반영한다
+    @Override
+    public Map<String, Member> findByIdsForUpdate(Collection<String> memberIds) {
+        flushIfBuffered(memberIds);
+        return target.findByIdsForUpdate(memberIds);
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        Set<String> bufferedBefore = Set.copyOf(buffer.keySet());
+        return target.streamAll()
+                .map(member -> overlay(member, bufferedBefore.contains(member.getMemberId())))
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public void forEach(Consumer<Member> action) {
+        Set<String> bufferedBefore = Set.copyOf(buffer.keySet());
+        target.forEach(member -> {
+            Member overlaid = overlay(member, bufferedBefore.contains(member.getMemberId()));
+            if (overlaid != null) {
+                action.accept(overlaid);
+            }
+        });
+    }
+
+    private Set<String> bufferedIds(Collection<String> memberIds) {
+        Set<String> ids = new HashSet<>();
+        for (String memberId : memberIds) {
+            if (buffer.containsKey(memberId)) {
+                ids.add(memberId);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public Member save(Member member) {
+        flushIfBuffered(member.getMemberId());
+        return target.save(member);
+    }
+
+    @Override
+    public void update(String memberId, int money, long version) {
+        flushIfBuffered(memberId);
+        target.update(memberId, money, version);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        flushIfBuffered(memberId);
+        target.delete(memberId);
+    }
+
+    @Override
+    public int increment(String memberId, int delta) {
+        flushIfBuffered(memberId);
+        return target.increment(memberId, delta);
+    }
+
+    @Override
+    public boolean debitIfSufficient(String memberId, int amount) {
+        flushIfBuffered(memberId);
+        return target.debitIfSufficient(memberId, amount);
+    }
+
+    @Override
+    public UpsertOutcome upsert(Member member) {
+        flushIfBuffered(member.getMemberId());
+        return target.upsert(member);
+    }
+
+    @Override
+    public void saveAll(String[] memberIds, int[] moneys) {
+        flushIfBuffered(memberIds);
+        target.saveAll(memberIds, moneys);
+    }
+
+    @Override
+    public void updateAll(String[] memberIds, int[] moneys) {
+        flushIfBuffered(memberIds);
+        target.updateAll(memberIds, moneys);
+    }
+
+    @Override
+    public void deleteAll(String[] memberIds) {
+        flushIfBuffered(memberIds);
+        target.deleteAll(memberIds);
+    }
+
+    @Override
+    public int[] incrementAll(String[] memberIds, int[] deltas) {
+        flushIfBuffered(memberIds);
+        return target.incrementAll(memberIds, deltas);
+    }
+
+    @Override
+    public UpsertOutcome[] upsertAll(String[] memberIds, int[] moneys) {
+        flushIfBuffered(memberIds);
+        return target.upsertAll(memberIds, moneys);
+    }
+
+    // 반영을 기다리는 회원 수
+    public int getBufferDepth() {
+        return buffer.size();
+    }
+
+    public int getMaxBufferDepth() {
+        return maxDepth.get();
+    }
+
+    public LatencyHistogram.Snapshot flushLatency() {
+        return flushLatency.snapshot();
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    public long getFlushedRowCount() {
+        return flushedRows.sum();
+    }
+
+    // 반영 전에 같은 회원을 다시 바꿔서 합쳐진 수
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getBackpressureWaitCount() {
+        return backpressureWaits.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getFlushFailureCount() {
+        return flushFailures.sum();
+    }
+
+    /**
+     * 반영 스레드를 멈추고 남은 값을 반영한다 - 실패하면 예외를 그대로 던진다
+     */
+    @Override
+    public void close() {
+        running = false;
+        requestFlush();
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        doFlush();
+        log.info("write-behind closed, flushes={}, rows={}, coalesced={}, flushLatency=[{}]",
+                getFlushCount(), getFlushedRowCount(), getCoalescedCount(), flushLatency());
+    }
+
+    private static class Pending {
+        private final int money;
+
+        Pending(int money) {
+            this.money = money;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package hello.jdbc.repository.ex;
+
+/**
+ * 낙관적 락 실패 - 읽은 뒤에 다른 트랜잭션이 먼저 변경했다 (version 불일치)
+ */
+public class MyOptimisticLockException extends MyDbException {
+    public MyOptimisticLockException() {
+        super();
+    }
+
+    public MyOptimisticLockException(String message) {
+        super(message);
+    }
+
+    public MyOptimisticLockException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public MyOptimisticLockException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,20 @@
+package hello.jdbc.repository.ex;
+
+import org.springframework.dao.DuplicateKeyException;
+
+/**
+ * 스택 트레이스를 채우지 않는 DuplicateKeyException
+ * 키 중복은 서비스 계층이 잡아서 복구하는 예상된 예외라서 스택 트레이스가 필요 없다
+ * catch (DuplicateKeyException e) 로 그대로 잡힌다
+ */
+public class StacklessDuplicateKeyException extends DuplicateKeyException {
+
+    public StacklessDuplicateKeyException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
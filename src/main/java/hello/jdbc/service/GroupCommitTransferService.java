@@ -0,0 +1,256 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 그룹 커밋 계좌이체
+ *
+ * 이체 요청을 큐에 모아두고 maxBatchSize 개가 차거나 maxDelay 가 지나면 한 트랜잭션으로 처리한다
+ * 같은 회원의 증감은 하나로 합쳐서(netting) 회원마다 update 한 번, 전체를 JDBC 배치 한 번으로 보낸다
+ * 호출자는 CompletableFuture 를 받고, 자기 이체가 들어간 배치가 커밋되면 완료된다
+ *
+ * 검증에 실패한 이체는 배치에 넣지 않고 그 이체만 실패시킨다
+ * 배치가 DB 에서 실패하면(회원 없음 등) 롤백한 뒤 이체를 하나씩 다시 처리해서 문제가 된 이체만 실패시킨다
+ * MemberServiceV4 기본 모드(READ_MODIFY_WRITE)처럼 잔액 부족은 검사하지 않는다
+ */
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+
+    // close() 가 큐 끝에 넣는 종료 표시 - 앞에 들어온 요청은 모두 처리한 뒤 워커가 끝난다
+    private static final Transfer POISON = new Transfer(null, null, 0);
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<Transfer> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * @param maxBatchSize  한 트랜잭션에 담을 최대 이체 수
+     * @param maxDelay      첫 요청이 들어온 뒤 배치를 채우며 기다리는 최대 시간
+     * @param queueCapacity 대기열 크기, 가득 차면 submit 이 바로 실패한다
+     */
+    public GroupCommitTransferService(MemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                                      int maxBatchSize, Duration maxDelay, int queueCapacity) {
+        Assert.isTrue(maxBatchSize > 0, "maxBatchSize 는 0보다 커야 합니다");
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.worker = new Thread(this::drainLoop, "group-commit-transfer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        Transfer transfer = new Transfer(fromId, toId, money);
+        if (!running) {
+            transfer.future.completeExceptionally(new RejectedExecutionException("이체 서비스가 종료되었습니다"));
+        } else if (!queue.offer(transfer)) {
+            transfer.future.completeExceptionally(new RejectedExecutionException("이체 대기열이 가득 찼습니다"));
+        }
+        return transfer.future;
+    }
+
+    /**
+     * 새 요청을 받지 않고, 이미 들어온 요청은 모두 처리한 뒤 끝낸다
+     */
+    @Override
+    public void close() throws InterruptedException {
+        if (!running) {
+            worker.join();
+            return;
+        }
+        running = false;
+        // 인터럽트하면 처리 중인 배치(JDBC 호출)가 깨질 수 있으므로 배치 사이에서 멈추도록 표시만 넣는다
+        queue.put(POISON);
+        worker.join();
+
+        // running 을 보고 들어왔지만 종료 표시보다 늦게 offer 한 요청
+        Transfer transfer;
+        while ((transfer = queue.poll()) != null) {
+            reject(transfer, new RejectedExecutionException("이체 서비스가 종료되었습니다"));
+        }
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getCommittedCount() {
+        return committed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // 배치가 실패해서 하나씩 다시 처리한 횟수
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    private void drainLoop() {
+        List<Transfer> batch = new ArrayList<>(maxBatchSize);
+        boolean stop = false;
+        while (!stop) {
+            try {
+                stop = collect(batch);
+            } catch (InterruptedException e) {
+                // 종료는 POISON 으로만 한다 - 모은 만큼 처리하고 계속 기다린다
+                log.warn("group commit worker interrupted, waiting for close()");
+            }
+            if (!batch.isEmpty()) {
+                process(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // 첫 요청을 기다린 뒤, 배치가 차거나 maxDelay 가 지날 때까지 더 모은다 - POISON 을 만나면 true
+    private boolean collect(List<Transfer> batch) throws InterruptedException {
+        Transfer first = queue.take();
+        if (first == POISON) {
+            return true;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+            if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                if (!running && batch.remove(POISON)) {
+                    return true;
+                }
+                continue;
+            }
+            Transfer next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return false;
+            }
+            if (next == POISON) {
+                return true;
+            }
+            batch.add(next);
+        }
+        return false;
+    }
+
+    private void process(List<Transfer> batch) {
+        List<Transfer> accepted = new ArrayList<>(batch.size());
+        for (Transfer transfer : batch) {
+            try {
+                validation(transfer.toId);
+                accepted.add(transfer);
+            } catch (RuntimeException e) {
+                reject(transfer, e);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        try {
+            txTemplate.executeWithoutResult(status -> apply(accepted));
+        } catch (RuntimeException e) {
+            log.warn("group commit failed, retry one by one size={}", accepted.size(), e);
+            fallbacks.increment();
+            for (Transfer transfer : accepted) {
+                processOne(transfer);
+            }
+            return;
+        }
+
+        batches.increment();
+        committed.add(accepted.size());
+        for (Transfer transfer : accepted) {
+            transfer.future.complete(null);
+        }
+    }
+
+    private void processOne(Transfer transfer) {
+        try {
+            txTemplate.executeWithoutResult(status -> apply(List.of(transfer)));
+        } catch (RuntimeException e) {
+            reject(transfer, e);
+            return;
+        }
+        committed.increment();
+        transfer.future.complete(null);
+    }
+
+    // 회원별로 증감을 합친 뒤 member_id 순서로 갱신한다 - 트랜잭션끼리 같은 순서로 잠그므로 교착 상태가 없다
+    // 합쳐서 0 이 된 회원도 보내서 회원이 있는지 확인한다
+    // long 으로 합치고, int 를 넘으면 ArithmeticException 으로 배치를 실패시켜 하나씩 다시 처리하게 한다
+    private void apply(List<Transfer> transfers) {
+        Map<String, Long> deltas = new TreeMap<>();
+        for (Transfer transfer : transfers) {
+            deltas.merge(transfer.fromId, -(long) transfer.money, Long::sum);
+            deltas.merge(transfer.toId, (long) transfer.money, Long::sum);
+        }
+
+        String[] memberIds = new String[deltas.size()];
+        int[] amounts = new int[deltas.size()];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            memberIds[i] = entry.getKey();
+            amounts[i] = Math.toIntExact(entry.getValue());
+            i++;
+        }
+
+        int[] counts = memberRepository.incrementAll(memberIds, amounts);
+        for (int j = 0; j < counts.length; j++) {
+            if (counts[j] == 0) {
+                throw new NoSuchElementException("member not found memberId=" + memberIds[j]);
+            }
+        }
+    }
+
+    private void reject(Transfer transfer, RuntimeException e) {
+        rejected.increment();
+        transfer.future.completeExceptionally(e);
+    }
+
+    private void validation(String toId) {
+        if(toId.equals("ex"))
+            throw new IllegalStateException("계좌이체 중 예외 발생");
+    }
+
+    private static class Transfer {
+        private final String fromId;
+        private final String toId;
+        private final int money;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Transfer(String fromId, String toId, int money) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+        }
+    }
+}
@@ -2,11 +2,19 @@ package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepository;
-import hello.jdbc.repository.MemberRepositoryV3;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
 
-import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 예외 누수 문제 해결
@@ -18,29 +26,194 @@ import java.sql.SQLException;
 public class MemberServiceV4 {
 
     private final MemberRepository memberRepository;
+    private final TransferMode transferMode;
+    private final RetryPolicy retryPolicy;
+    private StripedLockManager lockManager;
+    private TransactionTemplate txTemplate;
+    private final List<TransferListener> listeners = new CopyOnWriteArrayList<>();
+    // 재시작해도 겹치지 않게 시작 시각(ms)을 상위 비트에 둔다 - 1ms 에 이체 백만 건까지
+    // 인스턴스마다 따로 세므로 다른 인스턴스(샤드, 노드)와는 겹칠 수 있다 - 유일 키로 쓰지 않는다
+    private final AtomicLong txSeq = new AtomicLong(System.currentTimeMillis() << 20);
 
     public MemberServiceV4(MemberRepository memberRepository) {
+        this(memberRepository, TransferMode.READ_MODIFY_WRITE);
+    }
+
+    public MemberServiceV4(MemberRepository memberRepository, TransferMode transferMode) {
+        this(memberRepository, transferMode, RetryPolicy.defaultPolicy());
+    }
+
+    public MemberServiceV4(MemberRepository memberRepository, TransferMode transferMode, RetryPolicy retryPolicy) {
         this.memberRepository = memberRepository;
+        this.transferMode = transferMode;
+        this.retryPolicy = retryPolicy;
+    }
+
+    // 재시도 횟수 등 낙관적 락 지표
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * transfer 가 트랜잭션을 시작하기 전에 두 회원의 스트라이프 락을 잡는다
+     * accountTransfer 는 이미 트랜잭션(커넥션) 안이므로 락을 잡지 않는다
+     */
+    public void setLockManager(StripedLockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    // transfer 가 트랜잭션을 여는 데 쓴다 - 리포지토리와 같은 DataSource 의 트랜잭션 매니저
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.txTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 트랜잭션 밖에서 부르는 이체
+     * 스트라이프 락을 먼저 잡고, 잡은 뒤에 트랜잭션을 시작한다 - 락을 기다리는 동안 커넥션을 들고 있지 않는다
+     * 락은 커밋(롤백)이 끝난 뒤에 푼다
+     *
+     * OPTIMISTIC 은 시도마다 짧은 트랜잭션 하나 - version 충돌이면 롤백해서 커넥션을 돌려준 뒤
+     * RetryPolicy 의 백오프를 기다리고 새 트랜잭션으로 다시 읽어서 시도한다
+     */
+    public void transfer(String fromId, String toId, int money) {
+        Assert.state(txTemplate != null, "transfer 는 setTransactionManager 가 필요합니다");
+        Assert.state(!TransactionSynchronizationManager.isActualTransactionActive(),
+                "transfer 는 트랜잭션 밖에서 호출해야 합니다 - 트랜잭션 안이면 accountTransfer");
+        if (lockManager == null) {
+            transactionalTransfer(fromId, toId, money);
+            return;
+        }
+        try (StripedLockManager.Acquired acquired = lockManager.acquire(fromId, toId)) {
+            transactionalTransfer(fromId, toId, money);
+        }
+    }
+
+    private void transactionalTransfer(String fromId, String toId, int money) {
+        Runnable attempt = () -> txTemplate.executeWithoutResult(status -> accountTransfer(fromId, toId, money));
+        if (transferMode == TransferMode.OPTIMISTIC) {
+            retryPolicy.execute(attempt);
+        } else {
+            attempt.run();
+        }
+    }
+
+    /**
+     * 커밋된 이체를 받는다 (저널, 감사 로그 등)
+     * 트랜잭션 안이면 커밋된 뒤에, 트랜잭션 밖이면 이체가 끝난 뒤에 호출한다
+     */
+    public void addTransferListener(TransferListener listener) {
+        listeners.add(listener);
     }
 
     @Transactional // 애가 다함 ㅇㅇ commit, rollback도 알아서 해준다
     public void accountTransfer(String fromId, String toId, int money) {
+        if (listeners.isEmpty()) {
+            bizLogic(fromId, toId, money);
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            bizLogic(fromId, toId, money);
+            publish(fromId, toId, money);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(fromId, toId, money);
+            }
+        });
         bizLogic(fromId, toId, money);
     }
 
+    private void publish(String fromId, String toId, int money) {
+        TransferEvent event = new TransferEvent(txSeq.incrementAndGet(), fromId, toId, money, System.currentTimeMillis());
+        for (TransferListener listener : listeners) {
+            try {
+                listener.onCommitted(event);
+            } catch (RuntimeException e) {
+                // 이미 커밋됐으므로 이체는 성공으로 두고 다른 리스너는 계속 호출한다
+                log.error("TransferListener 실패 event={}", event, e);
+            }
+        }
+    }
+
     private void bizLogic(String fromId, String toId, int money) {
-        //비즈니스 로직
-        Member fromMember = memberRepository.findById(fromId);
-        Member toMember = memberRepository.findById(toId);
+        switch (transferMode) {
+            case ATOMIC:
+                atomicTransfer(fromId, toId, money);
+                break;
+            case PESSIMISTIC:
+                //두 회원을 member_id 순서로 한 번에 잠근 뒤 갱신한다
+                readModifyWriteTransfer(fromId, toId, money,
+                        memberRepository.findByIdsForUpdate(List.of(fromId, toId)));
+                break;
+            case OPTIMISTIC:
+                //한 번만 시도한다 - 충돌하면 트랜잭션을 롤백하고 transfer 가 새 트랜잭션으로 재시도한다
+                versionedTransfer(fromId, toId, money);
+                break;
+            default:
+                //비즈니스 로직 - 두 회원을 쿼리 한 번으로 조회한다
+                readModifyWriteTransfer(fromId, toId, money,
+                        memberRepository.findByIds(List.of(fromId, toId)));
+        }
+    }
+
+    private void readModifyWriteTransfer(String fromId, String toId, int money, Map<String, Member> members) {
+        Member fromMember = getMember(members, fromId);
+        Member toMember = getMember(members, toId);
 
         // 실제 계좌이체처럼 한곳에서 빠지고 한 곳은 돈이 들어간다
         memberRepository.update(fromId, fromMember.getMoney() - money);
-        validation(toMember);
+        validation(toId);
         memberRepository.update(toId, toMember.getMoney() + money);
     }
 
-    private void validation(Member toMember) {
-        if(toMember.getMemberId().equals("ex"))
+    private void versionedTransfer(String fromId, String toId, int money) {
+        Map<String, Member> members = memberRepository.findByIds(List.of(fromId, toId));
+        Member fromMember = getMember(members, fromId);
+        Member toMember = getMember(members, toId);
+
+        memberRepository.update(fromId, fromMember.getMoney() - money, fromMember.getVersion());
+        validation(toId);
+        memberRepository.update(toId, toMember.getMoney() + money, toMember.getVersion());
+    }
+
+    // 조회 없이 update 두 번 - 변경된 행 수로 회원 존재, 잔액을 확인한다
+    // 반대 방향 이체와 교착 상태가 생기지 않도록 member_id 순서로 갱신한다 (PESSIMISTIC, 그룹 커밋과 같은 순서)
+    private void atomicTransfer(String fromId, String toId, int money) {
+        if (fromId.compareTo(toId) <= 0) {
+            debit(fromId, money);
+            validation(toId);
+            credit(toId, money);
+        } else {
+            credit(toId, money);
+            validation(toId);
+            debit(fromId, money);
+        }
+    }
+
+    private void debit(String fromId, int money) {
+        if (!memberRepository.debitIfSufficient(fromId, money)) {
+            throw new IllegalStateException("잔액 부족 또는 회원 없음 memberId=" + fromId);
+        }
+    }
+
+    private void credit(String toId, int money) {
+        if (memberRepository.increment(toId, money) == 0) {
+            throw new NoSuchElementException("member not found memberId=" + toId);
+        }
+    }
+
+    private Member getMember(Map<String, Member> members, String memberId) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return member;
+    }
+
+    private void validation(String toId) {
+        if(toId.equals("ex"))
             throw new IllegalStateException("계좌이체 중 예외 발생");
     }
 }
@@ -0,0 +1,62 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ReactiveMemberRepository;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * MemberServiceV4.accountTransfer 의 리액티브 버전
+ *
+ * 트랜잭션은 스레드가 아니라 구독(Reactor Context)에 묶이므로 @Transactional 대신 TransactionalOperator 를 쓴다
+ * TransactionalOperator 는 R2dbcTransactionManager 로 만든다 - 저장소와 같은 ConnectionFactory
+ * 중간에 에러 신호가 나면 롤백, 정상 완료되면 커밋한다
+ */
+public class ReactiveMemberService {
+
+    private final ReactiveMemberRepository memberRepository;
+    private final TransactionalOperator transactionalOperator;
+
+    public ReactiveMemberService(ReactiveMemberRepository memberRepository,
+                                 TransactionalOperator transactionalOperator) {
+        this.memberRepository = memberRepository;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    public Mono<Void> accountTransfer(String fromId, String toId, int money) {
+        return bizLogic(fromId, toId, money)
+                .as(transactionalOperator::transactional);
+    }
+
+    //비즈니스 로직 - 두 회원을 쿼리 한 번으로 조회한다
+    private Mono<Void> bizLogic(String fromId, String toId, int money) {
+        return memberRepository.findByIds(List.of(fromId, toId))
+                .collectMap(Member::getMemberId)
+                .flatMap(members -> {
+                    Member fromMember = getMember(members, fromId);
+                    Member toMember = getMember(members, toId);
+
+                    return memberRepository.update(fromId, fromMember.getMoney() - money)
+                            .then(Mono.fromRunnable(() -> validation(toId)))
+                            .then(memberRepository.update(toId, toMember.getMoney() + money));
+                });
+    }
+
+    private Member getMember(Map<String, Member> members, String memberId) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId=" + memberId);
+        }
+        return member;
+    }
+
+    private void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("계좌이체 중 예외 발생");
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 낙관적 락 재시도 정책
+ *
+ * 충돌(MyOptimisticLockException)이 나면 지터를 섞은 지수 백오프 뒤에 다시 시도한다
+ * 재시도 예산 - 호출 1건마다 budgetRatio 만큼 토큰이 쌓이고 재시도 1번마다 1개를 쓴다
+ * 경합이 심해서 예산이 바닥나면 더 기다리지 않고 바로 실패시킨다 (재시도 폭주 방지)
+ *
+ * attempt 는 트랜잭션 하나 전체여야 한다 - 트랜잭션 밖에서 감싸야 백오프 동안 커넥션과 락을 들고 있지 않는다
+ */
+@Slf4j
+public class RetryPolicy {
+
+    private static final long TOKEN = 1000; // 토큰 1개 = 1000, 비율을 정수로 계산하기 위해
+
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long tokensPerCall;
+    private final long maxTokens;
+
+    private final AtomicLong budget;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    /**
+     * @param maxAttempts 최초 시도를 포함한 최대 시도 횟수
+     * @param baseBackoff 첫 재시도 대기 시간 상한, 재시도마다 두 배
+     * @param maxBackoff  대기 시간 상한
+     * @param budgetRatio 호출 1건당 허용하는 재시도 비율 (0.2 = 평균 5건당 재시도 1번)
+     * @param maxBudget   쌓아둘 수 있는 재시도 토큰 수
+     */
+    public RetryPolicy(int maxAttempts, Duration baseBackoff, Duration maxBackoff, double budgetRatio, int maxBudget) {
+        Assert.isTrue(maxAttempts > 0, "maxAttempts 는 0보다 커야 합니다");
+        Assert.isTrue(budgetRatio >= 0, "budgetRatio 는 0 이상이어야 합니다");
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.tokensPerCall = (long) (budgetRatio * TOKEN);
+        this.maxTokens = maxBudget * TOKEN;
+        this.budget = new AtomicLong(maxTokens);
+    }
+
+    public static RetryPolicy defaultPolicy() {
+        return new RetryPolicy(5, Duration.ofMillis(2), Duration.ofMillis(50), 0.2, 100);
+    }
+
+    public void execute(Runnable attempt) {
+        calls.increment();
+        deposit();
+
+        for (int attemptNo = 1; ; attemptNo++) {
+            try {
+                attempt.run();
+                return;
+            } catch (MyOptimisticLockException e) {
+                conflicts.increment();
+                if (attemptNo >= maxAttempts) {
+                    failures.increment();
+                    throw e;
+                }
+                if (!withdraw()) {
+                    budgetExhausted.increment();
+                    failures.increment();
+                    throw e;
+                }
+                retries.increment();
+                log.debug("optimistic lock conflict, retry attempt={}", attemptNo + 1);
+                backoff(attemptNo);
+            }
+        }
+    }
+
+    // full jitter - [0, min(max, base * 2^(n-1))] 에서 고르게 고른다
+    private void backoff(int attemptNo) {
+        long ceiling = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attemptNo - 1, 30));
+        if (ceiling <= 0) {
+            return;
+        }
+        long sleepNanos = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("재시도 대기 중 인터럽트", e);
+        }
+    }
+
+    private void deposit() {
+        budget.accumulateAndGet(tokensPerCall, (current, add) -> Math.min(maxTokens, current + add));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    public long getConflictCount() {
+        return conflicts.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+}
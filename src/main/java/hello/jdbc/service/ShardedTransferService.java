@@ -0,0 +1,138 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.ShardedMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 샤드를 나눈 회원 간 계좌이체
+ *
+ * 두 회원이 같은 샤드면 그 샤드의 로컬 트랜잭션 하나로 MemberServiceV4(ATOMIC)를 실행한다
+ * 다른 샤드면 두 단계로 나눈다
+ *  1. 보내는 쪽 샤드에서 잔액이 충분할 때만 출금하고 커밋
+ *  2. 받는 쪽 샤드에서 입금하고 커밋 - 입금이 롤백됐으면 보내는 쪽 샤드에서 출금을 되돌린다(보상)
+ * 1, 2 사이에는 돈이 어느 쪽에도 보이지 않는다. 보상까지 실패하면 에러 로그를 남기고 수를 센다 (수동 처리)
+ * 입금은 끝났는데 커밋에서 실패하면 커밋됐는지 알 수 없다 - 되돌리면 돈이 생길 수 있으므로 보상하지 않고
+ * 결과 불명(in-doubt)으로 에러 로그를 남기고 수를 센다 (수동 처리)
+ * 프로세스가 1, 2 사이에서 죽으면 출금만 남는다 - 이체 기록을 남겨 재처리하는 것은 범위 밖이다
+ *
+ * 샤드마다 트랜잭션 매니저가 따로라 바깥 트랜잭션에 참여하지 않는다 - 트랜잭션 밖에서 호출한다
+ */
+@Slf4j
+public class ShardedTransferService {
+
+    private final ShardedMemberRepository memberRepository;
+    private final TransactionTemplate[] txTemplates;
+    private final MemberServiceV4[] localServices;
+
+    private final LongAdder localTransfers = new LongAdder();
+    private final LongAdder crossShardTransfers = new LongAdder();
+    private final LongAdder compensated = new LongAdder();
+    private final LongAdder compensationFailures = new LongAdder();
+    private final LongAdder inDoubt = new LongAdder();
+
+    /**
+     * @param transactionManagers transactionManagers.get(i) 는 i 번 샤드 DataSource 의 트랜잭션 매니저
+     */
+    public ShardedTransferService(ShardedMemberRepository memberRepository,
+                                  List<PlatformTransactionManager> transactionManagers) {
+        int shards = memberRepository.getRouter().shardCount();
+        Assert.isTrue(transactionManagers.size() == shards, "트랜잭션 매니저 수와 샤드 수가 다릅니다");
+        this.memberRepository = memberRepository;
+        this.txTemplates = new TransactionTemplate[shards];
+        this.localServices = new MemberServiceV4[shards];
+        for (int s = 0; s < shards; s++) {
+            txTemplates[s] = new TransactionTemplate(transactionManagers.get(s));
+            localServices[s] = new MemberServiceV4(memberRepository.shard(s), TransferMode.ATOMIC);
+        }
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        int fromShard = memberRepository.shardOf(fromId);
+        int toShard = memberRepository.shardOf(toId);
+
+        if (fromShard == toShard) {
+            localTransfers.increment();
+            txTemplates[fromShard].executeWithoutResult(status ->
+                    localServices[fromShard].accountTransfer(fromId, toId, money));
+            return;
+        }
+
+        crossShardTransfers.increment();
+        txTemplates[fromShard].executeWithoutResult(status -> {
+            if (!memberRepository.debitIfSufficient(fromId, money)) {
+                throw new IllegalStateException("잔액 부족 또는 회원 없음 memberId=" + fromId);
+            }
+        });
+
+        // 콜백이 끝났으면 남은 것은 커밋뿐이다 - 그 뒤의 실패는 커밋됐는지 알 수 없다
+        boolean[] credited = new boolean[1];
+        try {
+            txTemplates[toShard].executeWithoutResult(status -> {
+                validation(toId);
+                if (memberRepository.increment(toId, money) == 0) {
+                    throw new NoSuchElementException("member not found memberId=" + toId);
+                }
+                credited[0] = true;
+            });
+        } catch (RuntimeException e) {
+            if (credited[0]) {
+                inDoubt.increment();
+                log.error("입금 커밋 결과 불명, 수동 확인 필요 fromId={}, toId={}, money={}", fromId, toId, money, e);
+            } else {
+                compensate(fromShard, fromId, money, e);
+            }
+            throw e;
+        }
+    }
+
+    // 커밋된 출금을 입금으로 되돌린다 - 입금이 롤백된 것이 확실할 때만 부른다
+    private void compensate(int fromShard, String fromId, int money, RuntimeException cause) {
+        try {
+            txTemplates[fromShard].executeWithoutResult(status -> {
+                if (memberRepository.increment(fromId, money) == 0) {
+                    throw new NoSuchElementException("member not found memberId=" + fromId);
+                }
+            });
+            compensated.increment();
+            log.info("입금 실패로 출금 취소 fromId={}, money={}", fromId, money);
+        } catch (RuntimeException e) {
+            compensationFailures.increment();
+            log.error("출금 취소 실패, 수동 처리 필요 fromId={}, money={}", fromId, money, e);
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("계좌이체 중 예외 발생");
+        }
+    }
+
+    public long getLocalTransferCount() {
+        return localTransfers.sum();
+    }
+
+    public long getCrossShardTransferCount() {
+        return crossShardTransfers.sum();
+    }
+
+    public long getCompensatedCount() {
+        return compensated.sum();
+    }
+
+    public long getCompensationFailureCount() {
+        return compensationFailures.sum();
+    }
+
+    // 입금 커밋이 실패해서 보상하지 않고 남겨둔 수
+    public long getInDoubtCount() {
+        return inDoubt.sum();
+    }
+}
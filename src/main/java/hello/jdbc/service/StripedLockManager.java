@@ -0,0 +1,199 @@
+package hello.jdbc.service;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 회원 단위 JVM 내부 락 - memberId 를 해시해서 고정된 개수의 스트라이프(ReentrantLock)에 나눈다
+ *
+ * 같은 회원을 건드리는 이체는 같은 스트라이프를 기다리므로,
+ * 커넥션을 빌리기 전에 잡으면 경합이 DB 행 락과 커넥션 풀이 아니라 메모리 안에서 줄을 선다
+ * 두 회원의 스트라이프는 항상 번호 순서로 잡기 때문에 서로 기다리는 교착 상태가 없다
+ */
+public class StripedLockManager {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final boolean fair;
+
+    /**
+     * @param stripes 스트라이프 수, 2의 거듭제곱으로 올림
+     * @param fair    true 면 기다린 순서대로 락을 준다 (처리량은 조금 떨어지고 대기 시간 편차가 줄어든다)
+     */
+    public StripedLockManager(int stripes, boolean fair) {
+        Assert.isTrue(stripes > 0 && stripes <= (1 << 30), "stripes 는 1 ~ 2^30 이어야 합니다");
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe(fair);
+        }
+        this.mask = size - 1;
+        this.fair = fair;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public boolean isFair() {
+        return fair;
+    }
+
+    public int stripeOf(String memberId) {
+        int h = memberId.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * 두 회원의 스트라이프를 번호 순서로 잡는다, 같은 스트라이프면 한 번만 잡는다
+     * 반환된 Acquired 를 close 해야 풀린다 (잡은 스레드에서)
+     */
+    public Acquired acquire(String firstId, String secondId) {
+        int a = stripeOf(firstId);
+        int b = stripeOf(secondId);
+        Stripe first = stripes[Math.min(a, b)];
+        Stripe second = a == b ? null : stripes[Math.max(a, b)];
+
+        first.lock();
+        if (second != null) {
+            try {
+                second.lock();
+            } catch (RuntimeException e) {
+                first.unlock();
+                throw e;
+            }
+        }
+        return new Acquired(first, second);
+    }
+
+    /**
+     * 스트라이프별 경합 지표 - 락을 잡은 횟수가 있는 스트라이프만
+     */
+    public List<StripeStats> stats() {
+        List<StripeStats> result = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            long acquisitions = stripe.acquisitions.sum();
+            if (acquisitions > 0) {
+                result.add(new StripeStats(i, acquisitions, stripe.contended.sum(),
+                        stripe.waitNanos.sum(), stripe.maxWaitNanos.get(), stripe.lock.getQueueLength()));
+            }
+        }
+        return result;
+    }
+
+    public static class Acquired implements AutoCloseable {
+        private final Stripe first;
+        private final Stripe second;
+        private boolean released;
+
+        private Acquired(Stripe first, Stripe second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        // 잡은 역순으로 푼다, 두 번 호출해도 한 번만 푼다
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (second != null) {
+                second.unlock();
+            }
+            first.unlock();
+        }
+    }
+
+    public static class StripeStats {
+        private final int stripe;
+        private final long acquisitions;
+        private final long contended;
+        private final long waitNanos;
+        private final long maxWaitNanos;
+        private final int queueLength;
+
+        StripeStats(int stripe, long acquisitions, long contended, long waitNanos, long maxWaitNanos, int queueLength) {
+            this.stripe = stripe;
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.waitNanos = waitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.queueLength = queueLength;
+        }
+
+        public int getStripe() {
+            return stripe;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        // 바로 잡지 못하고 기다린 횟수
+        public long getContended() {
+            return contended;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        // 조회 시점에 기다리고 있던 스레드 수 (추정치)
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        @Override
+        public String toString() {
+            return "StripeStats{stripe=" + stripe + ", acquisitions=" + acquisitions + ", contended=" + contended
+                    + ", waitMs=" + TimeUnit.NANOSECONDS.toMillis(waitNanos)
+                    + ", maxWaitMs=" + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + ", queueLength=" + queueLength + "}";
+        }
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock;
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder contended = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Stripe(boolean fair) {
+            this.lock = new ReentrantLock(fair);
+        }
+
+        void lock() {
+            try {
+                // tryLock(0, ...) 은 tryLock() 과 달리 공정 모드에서 새치기하지 않는다
+                if (!lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+                    contended.increment();
+                    long start = System.nanoTime();
+                    lock.lockInterruptibly();
+                    long waited = System.nanoTime() - start;
+                    waitNanos.add(waited);
+                    maxWaitNanos.accumulateAndGet(waited, Math::max);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("회원 락 대기 중 인터럽트", e);
+            }
+            acquisitions.increment();
+        }
+
+        void unlock() {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package hello.jdbc.service;
+
+/**
+ * 커밋된 이체 한 건
+ */
+public class TransferEvent {
+
+    private final long txId; // 이체마다 하나씩 - MemberServiceV4 가 붙인다, 인스턴스 안에서만 유일하다
+    private final String fromId;
+    private final String toId;
+    private final int amount;
+    private final long timestamp; // 커밋된 시각 (epoch millis)
+
+    public TransferEvent(long txId, String fromId, String toId, int amount, long timestamp) {
+        this.txId = txId;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.amount = amount;
+        this.timestamp = timestamp;
+    }
+
+    public long getTxId() {
+        return txId;
+    }
+
+    public String getFromId() {
+        return fromId;
+    }
+
+    public String getToId() {
+        return toId;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferEvent(txId=" + txId + ", fromId=" + fromId + ", toId=" + toId
+                + ", amount=" + amount + ", timestamp=" + timestamp + ")";
+    }
+}
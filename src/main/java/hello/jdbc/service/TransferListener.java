@@ -0,0 +1,10 @@
+package hello.jdbc.service;
+
+/**
+ * 이체 트랜잭션이 커밋된 뒤에 호출된다 - 롤백된 이체는 오지 않는다
+ * 이미 커밋된 뒤이므로 여기서 던진 예외는 이체를 되돌리지 않는다
+ */
+public interface TransferListener {
+
+    void onCommitted(TransferEvent event);
+}
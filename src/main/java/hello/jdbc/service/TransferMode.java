@@ -0,0 +1,33 @@
+package hello.jdbc.service;
+
+/**
+ * 계좌이체 방식
+ */
+public enum TransferMode {
+
+    /**
+     * 두 회원을 조회하고, 자바에서 계산한 잔액을 update 로 덮어쓴다
+     * 동시에 이체하면 나중에 쓴 값이 먼저 쓴 값을 덮어쓸 수 있다 (갱신 손실)
+     */
+    READ_MODIFY_WRITE,
+
+    /**
+     * 조회 없이 SQL 안에서 차감(잔액이 충분할 때만), 증가한다 - update 두 번으로 끝난다
+     * 잔액이 부족하면 이체하지 않는다
+     * 두 update 는 member_id 순서로 보내서 반대 방향 이체와 교착 상태가 생기지 않는다
+     */
+    ATOMIC,
+
+    /**
+     * select ... for update 로 두 회원을 member_id 순서대로 잠근 뒤 READ_MODIFY_WRITE 와 같이 갱신한다
+     * 반대 방향 이체가 동시에 와도 같은 순서로 잠그므로 교착 상태가 생기지 않는다
+     */
+    PESSIMISTIC,
+
+    /**
+     * 락 없이 읽고 update ... where version=? 로 저장한다
+     * 다른 트랜잭션이 먼저 바꿨으면 MemberServiceV4.transfer 가 RetryPolicy 에 따라 새 트랜잭션으로 재시도한다
+     * accountTransfer 는 한 번만 시도한다 (이미 열린 트랜잭션 안에서 기다리지 않는다)
+     */
+    OPTIMISTIC
+}
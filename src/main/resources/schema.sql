@@ -0,0 +1,24 @@
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+
+-- 낙관적 락
+alter table member add column if not exists version bigint not null default 0;
+
+-- 회원 id 블록 할당 (hi/lo) - 값 하나가 블록 하나
+create sequence if not exists member_id_seq start with 0 minvalue 0;
+
+-- 이체 감사 로그 - AuditTrailWriter 가 커밋된 이체를 모아서 배치로 넣는다
+-- tx_id 는 서비스 인스턴스 안에서만 유일하다 - 여러 인스턴스(노드)가 함께 쓰므로 키는 따로 둔다
+create table if not exists transfer_audit (
+    audit_id bigint generated by default as identity,
+    tx_id bigint not null,
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    amount integer not null,
+    committed_at timestamp not null,
+    primary key (audit_id)
+);
+create index if not exists transfer_audit_tx_id on transfer_audit(tx_id);
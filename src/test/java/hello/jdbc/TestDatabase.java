@@ -0,0 +1,50 @@
+package hello.jdbc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+
+/**
+ * 스프링 컨텍스트 없이 도는 테스트의 DataSource
+ * 스프링 부트가 하던 schema.sql 실행을 여기서 한다
+ */
+public abstract class TestDatabase {
+
+    // ConnectionConst 의 H2 서버
+    public static HikariDataSource hikari() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        init(dataSource);
+        return dataSource;
+    }
+
+    // 풀이 뜨면 설정을 바꿀 수 없으므로 크기는 여기서 정한다
+    public static HikariDataSource hikari(int maximumPoolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        init(dataSource);
+        return dataSource;
+    }
+
+    // 이름마다 따로인 메모리 H2 - 마지막 커넥션이 닫혀도 테이블이 남는다
+    public static HikariDataSource memory(String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        init(dataSource);
+        return dataSource;
+    }
+
+    public static void init(DataSource dataSource) {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+}
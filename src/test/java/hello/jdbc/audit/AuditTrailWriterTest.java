@@ -0,0 +1,293 @@
+package hello.jdbc.audit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 감사 로그 - 메모리 H2
+ */
+@Slf4j
+class AuditTrailWriterTest {
+
+    HikariDataSource dataSource;
+    JdbcTemplate template;
+    AtomicLong txSeq = new AtomicLong();
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.memory("audit");
+        template = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        template.update("delete from transfer_audit");
+        dataSource.close();
+    }
+
+    @Test
+    void ringOverflow() {
+        AuditRingBuffer ring = new AuditRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(ring.tryPublish(event())).isTrue();
+        }
+        assertThat(ring.tryPublish(event())).isFalse();
+        assertThat(ring.lag()).isEqualTo(4);
+
+        AuditRingBuffer.Batch batch = new AuditRingBuffer.Batch(3);
+        assertThat(ring.drainTo(batch, 3)).isEqualTo(3);
+        assertThat(batch.txIds).containsExactly(1, 2, 3);
+
+        //자리가 돌아왔다
+        assertThat(ring.tryPublish(event())).isTrue();
+        assertThat(ring.drainTo(batch, 3)).isEqualTo(2);
+        assertThat(batch.txIds[0]).isEqualTo(4);
+        assertThat(batch.txIds[1]).isEqualTo(6);
+    }
+
+    @Test
+    void onlyCommittedTransfers() {
+        MemberRepository memberRepository = new MemberRepositoryV5(dataSource);
+        MemberServiceV4 memberService = new MemberServiceV4(memberRepository);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        memberRepository.save(new Member("memberA", 10000));
+        memberRepository.save(new Member("memberB", 10000));
+        memberRepository.save(new Member("ex", 10000));
+
+        try (AuditTrailWriter writer = new AuditTrailWriter(dataSource, 1024, 64, WaitStrategy.PARK, OverflowPolicy.BLOCK)) {
+            memberService.addTransferListener(writer);
+
+            for (int i = 0; i < 10; i++) {
+                txTemplate.executeWithoutResult(status -> memberService.accountTransfer("memberA", "memberB", 100));
+            }
+            assertThatThrownBy(() -> txTemplate.executeWithoutResult(
+                    status -> memberService.accountTransfer("memberA", "ex", 100)))
+                    .isInstanceOf(IllegalStateException.class);
+        } finally {
+            memberRepository.deleteAll(new String[]{"memberA", "memberB", "ex"});
+        }
+
+        assertThat(template.queryForObject("select count(*) from transfer_audit", Long.class)).isEqualTo(10);
+        assertThat(template.queryForObject("select count(*) from transfer_audit where to_id = 'ex'", Long.class)).isZero();
+    }
+
+    /**
+     * 서비스 인스턴스가 여럿이면 tx_id 가 겹칠 수 있다 - 겹쳐도 배치가 실패하지 않는다
+     */
+    @Test
+    void twoPublishingServices() {
+        MemberRepository memberRepository = new MemberRepositoryV5(dataSource);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        MemberServiceV4 serviceA = new MemberServiceV4(memberRepository);
+        MemberServiceV4 serviceB = new MemberServiceV4(memberRepository);
+        memberRepository.save(new Member("memberA", 10000));
+        memberRepository.save(new Member("memberB", 10000));
+
+        try (AuditTrailWriter writer = new AuditTrailWriter(dataSource, 1024, 64, WaitStrategy.PARK, OverflowPolicy.BLOCK)) {
+            serviceA.addTransferListener(writer);
+            serviceB.addTransferListener(writer);
+
+            for (int i = 0; i < 5; i++) {
+                txTemplate.executeWithoutResult(status -> serviceA.accountTransfer("memberA", "memberB", 100));
+                txTemplate.executeWithoutResult(status -> serviceB.accountTransfer("memberB", "memberA", 100));
+            }
+            //같은 밀리초에 만들어진 인스턴스처럼 tx_id 가 똑같아도 넣는다
+            writer.publish(new TransferEvent(1, "memberA", "memberB", 1, System.currentTimeMillis()));
+            writer.publish(new TransferEvent(1, "memberB", "memberA", 1, System.currentTimeMillis()));
+            writer.close();
+
+            assertThat(writer.getFailedCount()).isZero();
+            assertThat(writer.getWrittenCount()).isEqualTo(12);
+        } finally {
+            memberRepository.deleteAll(new String[]{"memberA", "memberB"});
+        }
+
+        assertThat(template.queryForObject("select count(*) from transfer_audit", Long.class)).isEqualTo(12);
+        assertThat(template.queryForObject("select count(*) from transfer_audit where tx_id = 1", Long.class)).isEqualTo(2);
+    }
+
+    /**
+     * 16 스레드가 동시에 넣는다 - 대기 방법별 처리량, 지연
+     */
+    @Test
+    void concurrentProducers() throws Exception {
+        int threads = 16;
+        int perThread = 2000;
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            AuditTrailWriter writer = new AuditTrailWriter(dataSource, 1024, 256, waitStrategy, OverflowPolicy.BLOCK);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        writer.publish(event());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            executor.shutdown();
+            writer.close();
+
+            log.info("waitStrategy={}, throughput={}/s, batches={}, maxLag={}, blocked={}, lagLatency=[{}]",
+                    waitStrategy, (long) writer.getThroughput(), writer.getBatchCount(), writer.getMaxLag(),
+                    writer.getBlockedCount(), writer.lagLatency());
+            assertThat(writer.getWrittenCount()).isEqualTo((long) threads * perThread);
+            assertThat(writer.getBatchCount()).isLessThan(writer.getWrittenCount());
+            assertThat(writer.getLag()).isZero();
+        }
+        assertThat(template.queryForObject("select count(*) from transfer_audit", Long.class))
+                .isEqualTo((long) threads * perThread * WaitStrategy.values().length);
+    }
+
+    @Test
+    void dropWhenFull() throws Exception {
+        //DB 가 멈춘 것처럼 커넥션을 막는다
+        CountDownLatch release = new CountDownLatch(1);
+        DelegatingDataSource slowDataSource = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getConnection();
+            }
+        };
+        AuditTrailWriter writer = new AuditTrailWriter(slowDataSource, 4, 2, WaitStrategy.YIELD, OverflowPolicy.DROP);
+
+        int published = 0;
+        for (int i = 0; i < 10; i++) {
+            if (writer.publish(event())) {
+                published++;
+            }
+        }
+        //소비자가 많아야 batchSize 개를 가져가고 버퍼에 4개 - 나머지는 버린다
+        assertThat(writer.getDroppedCount()).isGreaterThanOrEqualTo(4);
+
+        release.countDown();
+        writer.close();
+        assertThat(writer.getWrittenCount()).isEqualTo(published);
+        assertThat(writer.getWrittenCount() + writer.getDroppedCount()).isEqualTo(10);
+    }
+
+    @Test
+    void rejectWhenFull() {
+        CountDownLatch release = new CountDownLatch(1);
+        DelegatingDataSource slowDataSource = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getConnection();
+            }
+        };
+        AuditTrailWriter writer = new AuditTrailWriter(slowDataSource, 4, 2, WaitStrategy.YIELD, OverflowPolicy.REJECT);
+
+        assertThatThrownBy(() -> {
+            for (int i = 0; i < 10; i++) {
+                writer.publish(event());
+            }
+        }).isInstanceOf(RejectedExecutionException.class);
+        assertThat(writer.getRejectedCount()).isEqualTo(1);
+
+        release.countDown();
+        writer.close();
+    }
+
+    @Test
+    void consumerSurvivesUnexpectedException() throws Exception {
+        //첫 커넥션만 DataAccessException 이 아닌 예외로 실패한다
+        AtomicLong calls = new AtomicLong();
+        DelegatingDataSource failingOnce = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (calls.incrementAndGet() == 1) {
+                    throw new UnsupportedOperationException("첫 커넥션 실패");
+                }
+                return super.getConnection();
+            }
+        };
+        AuditTrailWriter writer = new AuditTrailWriter(failingOnce, 4, 2, WaitStrategy.YIELD, OverflowPolicy.BLOCK);
+
+        writer.publish(event());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.getFailedCount() == 0) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        //소비자가 살아 있으므로 다음 이벤트는 들어간다
+        writer.publish(event());
+        writer.close();
+
+        assertThat(writer.getFailedCount()).isEqualTo(1);
+        assertThat(writer.getWrittenCount()).isEqualTo(1);
+    }
+
+    @Test
+    void closeWhilePublishing() throws Exception {
+        AuditTrailWriter writer = new AuditTrailWriter(dataSource, 64, 16, WaitStrategy.YIELD, OverflowPolicy.BLOCK);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    while (true) {
+                        writer.publish(event());
+                    }
+                } catch (RejectedExecutionException e) {
+                    //닫혔다
+                }
+            }));
+        }
+        Thread.sleep(100);
+        writer.close();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        //받아들인 이벤트는 모두 들어간다
+        assertThat(writer.getPublishedCount()).isPositive();
+        assertThat(writer.getWrittenCount()).isEqualTo(writer.getPublishedCount());
+        assertThat(template.queryForObject("select count(*) from transfer_audit", Long.class))
+                .isEqualTo(writer.getPublishedCount());
+    }
+
+    private TransferEvent event() {
+        return new TransferEvent(txSeq.incrementAndGet(), "a", "b", 1, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,81 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 커넥션 획득, 보유, SQL 실행 시간 측정
+ */
+@Slf4j
+class InstrumentedDataSourceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    HikariDataSource hikari;
+    HistogramDataSourceMetrics metrics;
+    InstrumentedDataSource dataSource;
+    MemberRepositoryV5 repository;
+
+    @BeforeEach
+    void beforeEach() {
+        hikari = TestDatabase.hikari();
+
+        metrics = new HistogramDataSourceMetrics();
+        dataSource = new InstrumentedDataSource(hikari, metrics);
+        repository = new MemberRepositoryV5(dataSource);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete(MEMBER_A);
+        repository.delete(MEMBER_B);
+        hikari.close();
+    }
+
+    @Test
+    void statementsAndConnections() {
+        repository.save(new Member(MEMBER_A, 10000));
+        for (int i = 0; i < 10; i++) {
+            repository.findById(MEMBER_A);
+        }
+
+        HistogramDataSourceMetrics.Snapshot snapshot = metrics.snapshot();
+        log.info("metrics\n{}", snapshot);
+
+        //save 1번, findById 10번 - 호출마다 커넥션을 빌리고 반납한다
+        assertThat(snapshot.getAcquire().getCount()).isEqualTo(11);
+        assertThat(snapshot.getHold().getCount()).isEqualTo(11);
+        assertThat(snapshot.getStatements().get("select * from member where member_id = ?").getCount()).isEqualTo(10);
+        assertThat(snapshot.getStatements().get("insert into member(member_id, money) values (?, ?)").getCount()).isEqualTo(1);
+        assertThat(snapshot.getStatementFailures()).isZero();
+    }
+
+    @Test
+    void transferHoldsOneConnection() {
+        repository.save(new Member(MEMBER_A, 10000));
+        repository.save(new Member(MEMBER_B, 10000));
+
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        MemberServiceV4 memberService = new MemberServiceV4(repository);
+        txTemplate.executeWithoutResult(status -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000));
+
+        //이체 한 건은 커넥션 하나로 조회 1번, 변경 2번
+        HistogramDataSourceMetrics.Snapshot snapshot = metrics.snapshot();
+        log.info("transfer hold={}", snapshot.getHold());
+        assertThat(snapshot.getAcquire().getCount()).isEqualTo(3);
+        assertThat(snapshot.getStatements().get("update member set money=?, version=version+1 where member_id=?").getCount())
+                .isEqualTo(2);
+    }
+}
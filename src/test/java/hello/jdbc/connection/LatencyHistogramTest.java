@@ -0,0 +1,65 @@
+package hello.jdbc.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketBoundaries() {
+        //모든 값은 자기 버킷의 최댓값 이하이고, 버킷 폭은 값의 1/32 이하다
+        long[] values = {0, 1, 31, 32, 33, 63, 64, 65, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.indexOf(value);
+            long highest = LatencyHistogram.highestValueOf(index);
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(Math.max(value / 32, 0));
+        }
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount()).isEqualTo(10_000);
+        assertThat(snapshot.getMaxNanos()).isEqualTo(10_000_000L);
+        assertThat(snapshot.getMeanNanos()).isCloseTo(5_000_500.0, within(1.0));
+        //상대 오차 3% 이내
+        assertThat((double) snapshot.percentileNanos(50)).isCloseTo(5_000_000.0, within(150_000.0));
+        assertThat((double) snapshot.percentileNanos(99)).isCloseTo(9_900_000.0, within(300_000.0));
+        assertThat(snapshot.percentileNanos(100)).isEqualTo(10_000_000L);
+    }
+
+    @Test
+    void concurrentRecord() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertThat(histogram.snapshot().getCount()).isEqualTo(800_000);
+    }
+}
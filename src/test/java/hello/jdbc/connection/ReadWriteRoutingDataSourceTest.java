@@ -0,0 +1,163 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.TestDatabase;
+import hello.jdbc.connection.ReadWriteRoutingDataSource.Balancing;
+import hello.jdbc.repository.MemberRepositoryV3;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 메모리 H2 세 개 - 주 DB 와 복제본 둘
+ * 어디서 읽었는지 알 수 있도록 같은 회원의 잔액을 DB 마다 다르게 넣는다
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    static final String MEMBER_ID = "rw";
+
+    DataSource primary = database("rwPrimary", 1000);
+    DataSource replica0 = database("rwReplica0", 2000);
+    DataSource replica1 = database("rwReplica1", 3000);
+
+    @AfterEach
+    void afterEach() {
+        for (DataSource dataSource : List.of(primary, replica0, replica1)) {
+            new JdbcTemplate(dataSource).update("delete from member where member_id = ?", MEMBER_ID);
+        }
+    }
+
+    @Test
+    void readOnlyTransactionGoesToReplica() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica0), Balancing.ROUND_ROBIN);
+        DataSource dataSource = routing.lazy();
+        //LazyConnectionDataSourceProxy 가 기본값(autoCommit, 격리 수준)을 읽으려고 주 DB 커넥션을 한 번 빌린다
+        long primaryBefore = routing.getPrimaryRouteCount();
+        TransactionTemplate readWrite = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        TransactionTemplate readOnly = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnly.setReadOnly(true);
+
+        //DataSourceUtils 로 커넥션을 받는 리포지토리
+        MemberRepositoryV3 repositoryV3 = new MemberRepositoryV3(dataSource);
+        MemberRepositoryV4_2 repositoryV4 = new MemberRepositoryV4_2(dataSource);
+
+        assertThat(readOnly.execute(status -> repositoryV4.findById(MEMBER_ID).getMoney())).isEqualTo(2000);
+        assertThat(readWrite.execute(status -> repositoryV4.findById(MEMBER_ID).getMoney())).isEqualTo(1000);
+        //트랜잭션 밖은 주 DB
+        assertThat(repositoryV4.findById(MEMBER_ID).getMoney()).isEqualTo(1000);
+
+        assertThat(readOnly.execute(status -> {
+            try {
+                return repositoryV3.findById(MEMBER_ID).getMoney();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        })).isEqualTo(2000);
+
+        assertThat(routing.getReplicaRouteCount(0)).isEqualTo(2);
+        assertThat(routing.getPrimaryRouteCount() - primaryBefore).isEqualTo(2);
+    }
+
+    @Test
+    void credentialsArePassedThrough() throws SQLException {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, List.of(replica0), Balancing.LEAST_OUTSTANDING);
+
+        try (Connection connection = routing.getConnection("sa", "")) {
+            assertThat(connection.getMetaData().getURL()).contains("rwPrimary");
+        }
+        //읽기 전용 트랜잭션 안이라고 표시만 한다
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        try (Connection connection = routing.getConnection("sa", "")) {
+            assertThat(connection.getMetaData().getURL()).contains("rwReplica0");
+        } finally {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+
+        assertThat(routing.getPrimaryRouteCount()).isEqualTo(1);
+        assertThat(routing.getReplicaRouteCount(0)).isEqualTo(1);
+        assertThat(routing.getOutstanding(0)).isZero();
+    }
+
+    @Test
+    void roundRobin() {
+        ReadWriteRoutingDataSource routing =
+                new ReadWriteRoutingDataSource(primary, List.of(replica0, replica1), Balancing.ROUND_ROBIN);
+        DataSource dataSource = routing.lazy();
+        TransactionTemplate readOnly = readOnlyTemplate(dataSource);
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+
+        int sum = 0;
+        for (int i = 0; i < 4; i++) {
+            sum += readOnly.execute(status -> repository.findById(MEMBER_ID).getMoney());
+        }
+
+        assertThat(sum).isEqualTo(2 * 2000 + 2 * 3000);
+        assertThat(routing.getReplicaRouteCount(0)).isEqualTo(2);
+        assertThat(routing.getReplicaRouteCount(1)).isEqualTo(2);
+    }
+
+    @Test
+    void leastOutstanding() throws Exception {
+        ReadWriteRoutingDataSource routing =
+                new ReadWriteRoutingDataSource(primary, List.of(replica0, replica1), Balancing.LEAST_OUTSTANDING);
+        DataSource dataSource = routing.lazy();
+        TransactionTemplate readOnly = readOnlyTemplate(dataSource);
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+
+        //다른 스레드가 읽기 전용 트랜잭션을 열어둔 채로 복제본 커넥션 하나를 잡고 있다
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> holder = CompletableFuture.supplyAsync(() -> readOnly.execute(status -> {
+            int money = repository.findById(MEMBER_ID).getMoney();
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return money;
+        }));
+        assertThat(holding.await(10, TimeUnit.SECONDS)).isTrue();
+        int busy = routing.getOutstanding(0) == 1 ? 0 : 1;
+
+        //나머지는 모두 한가한 복제본으로 간다
+        for (int i = 0; i < 10; i++) {
+            readOnly.execute(status -> repository.findById(MEMBER_ID));
+        }
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+
+        assertThat(routing.getReplicaRouteCount(busy)).isEqualTo(1);
+        assertThat(routing.getReplicaRouteCount(1 - busy)).isEqualTo(10);
+        assertThat(routing.getOutstanding(0) + routing.getOutstanding(1)).isZero();
+    }
+
+    private TransactionTemplate readOnlyTemplate(DataSource dataSource) {
+        TransactionTemplate template = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private static DataSource database(String name, int money) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        TestDatabase.init(dataSource);
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.update("delete from member where member_id = ?", MEMBER_ID);
+        template.update("insert into member(member_id, money) values (?, ?)", MEMBER_ID, money);
+        return dataSource;
+    }
+}
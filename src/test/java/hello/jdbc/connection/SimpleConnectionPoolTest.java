@@ -0,0 +1,177 @@
+package hello.jdbc.connection;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV0;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * DBConnectionUtil 풀 모드
+ */
+@Slf4j
+class SimpleConnectionPoolTest {
+
+    @AfterEach
+    void afterEach() {
+        DBConnectionUtil.disablePooling();
+    }
+
+    @Test
+    void reuse() throws SQLException {
+        SimpleConnectionPool pool = DBConnectionUtil.enablePooling(2);
+
+        for (int i = 0; i < 10; i++) {
+            Connection con = DBConnectionUtil.getConnection();
+            con.close();
+            assertThat(con.isClosed()).isTrue();
+        }
+
+        //같은 스레드는 마지막에 쓴 커넥션을 다시 받는다
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+        assertThat(pool.getAffinityHitCount()).isEqualTo(9);
+        assertThat(pool.getActiveCount()).isZero();
+    }
+
+    @Test
+    void resetOnReturn() throws SQLException {
+        DBConnectionUtil.enablePooling(1);
+
+        Connection con = DBConnectionUtil.getConnection();
+        con.setAutoCommit(false);
+        con.close();
+
+        //앞 사용자가 끝내지 않은 트랜잭션은 롤백되고 autoCommit 이 돌아온다
+        try (Connection next = DBConnectionUtil.getConnection()) {
+            assertThat(next.getAutoCommit()).isTrue();
+        }
+    }
+
+    @Test
+    void timeout() throws SQLException {
+        SimpleConnectionPool pool = DBConnectionUtil.enablePooling(
+                new SimpleConnectionPool(URL, USERNAME, PASSWORD, 1, Duration.ofMillis(100), Duration.ofMinutes(1)));
+
+        try (Connection held = pool.getConnection()) {
+            assertThatThrownBy(pool::getConnection).isInstanceOf(SQLTimeoutException.class);
+        }
+        assertThat(pool.getTimeoutCount()).isEqualTo(1);
+    }
+
+    @Test
+    void credentials() throws SQLException {
+        SimpleConnectionPool pool = DBConnectionUtil.enablePooling(1);
+
+        try (Connection con = pool.getConnection(USERNAME, PASSWORD)) {
+            assertThat(con.isValid(1)).isTrue();
+        }
+        assertThatThrownBy(() -> pool.getConnection("other", "")).isInstanceOf(SQLFeatureNotSupportedException.class);
+        assertThat(pool.getActiveCount()).isZero();
+    }
+
+    @Test
+    void statementIsWrapped() throws SQLException {
+        DBConnectionUtil.enablePooling(1);
+
+        try (Connection con = DBConnectionUtil.getConnection();
+             Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select 1")) {
+            //풀의 프록시를 돌려줘야 stmt.getConnection().close() 도 반납이 된다
+            assertThat(stmt.getConnection()).isSameAs(con);
+            assertThat(rs.getStatement().getConnection()).isSameAs(con);
+            assertThat(rs.next()).isTrue();
+        }
+    }
+
+    @Test
+    void idleEviction() throws Exception {
+        SimpleConnectionPool pool = DBConnectionUtil.enablePooling(
+                new SimpleConnectionPool(URL, USERNAME, PASSWORD, 2, Duration.ofSeconds(1), Duration.ofMillis(200)));
+
+        pool.getConnection().close();
+        assertThat(pool.getTotalCount()).isEqualTo(1);
+
+        //housekeeper 는 최소 1초 간격으로 돈다
+        Thread.sleep(2500);
+        assertThat(pool.getEvictedCount()).isEqualTo(1);
+        assertThat(pool.getTotalCount()).isZero();
+    }
+
+    @Test
+    void concurrentBorrowNeverExceedsMaxSize() throws Exception {
+        int maxSize = 4;
+        SimpleConnectionPool pool = DBConnectionUtil.enablePooling(maxSize);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < 16; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    try (Connection con = DBConnectionUtil.getConnection()) {
+                        maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                        con.isValid(1);
+                        inUse.decrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        log.info("borrows={}, affinityHits={}, created={}, maxWait={}ms, maxHold={}ms",
+                pool.getBorrowCount(), pool.getAffinityHitCount(), pool.getCreatedCount(),
+                TimeUnit.NANOSECONDS.toMillis(pool.getMaxWaitNanos()), TimeUnit.NANOSECONDS.toMillis(pool.getMaxHoldNanos()));
+        assertThat(maxInUse.get()).isLessThanOrEqualTo(maxSize);
+        assertThat(pool.getTotalCount()).isLessThanOrEqualTo(maxSize);
+        assertThat(pool.getBorrowCount()).isEqualTo(16 * 200);
+    }
+
+    @Test
+    void legacyRepositoryLatency() throws SQLException {
+        MemberRepositoryV0 repository = new MemberRepositoryV0();
+        repository.save(new Member("poolV0", 10000));
+        try {
+            long driverManager = measure(repository);
+
+            DBConnectionUtil.enablePooling(1);
+            long pooled = measure(repository);
+
+            log.info("MemberRepositoryV0.findById per call: driverManager={}us, pooled={}us", driverManager, pooled);
+        } finally {
+            repository.delete("poolV0");
+        }
+    }
+
+    private long measure(MemberRepositoryV0 repository) throws SQLException {
+        int calls = 200;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            repository.findById("poolV0");
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / calls;
+    }
+}
@@ -0,0 +1,92 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_1;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 느린 쿼리 로그
+ */
+@Slf4j
+class SlowQueryLogDataSourceTest {
+
+    public static final String MEMBER_A = "memberA";
+
+    HikariDataSource hikari;
+    List<SlowQueryLogDataSource.SlowQuery> captured = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void beforeEach() {
+        hikari = TestDatabase.hikari();
+        new MemberRepositoryV5(hikari).save(new Member(MEMBER_A, 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        new MemberRepositoryV5(hikari).delete(MEMBER_A);
+        hikari.close();
+    }
+
+    @Test
+    void captureJdbcTemplateQuery() {
+        //threshold 0 - 모든 쿼리를 느린 쿼리로 본다
+        SlowQueryLogDataSource dataSource = new SlowQueryLogDataSource(hikari, Duration.ZERO, 1.0,
+                SlowQueryLogDataSource.DEFAULT_CALLER_PACKAGE, captured::add);
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        txTemplate.setName("transferTx");
+        txTemplate.executeWithoutResult(status -> repository.update(MEMBER_A, 9000));
+
+        assertThat(captured).hasSize(1);
+        SlowQueryLogDataSource.SlowQuery query = captured.get(0);
+        log.info("captured {}", query);
+        assertThat(query.getSql()).isEqualTo("update member set money=?, version=version+1 where member_id=?");
+        assertThat(query.getParameters()).isEqualTo("[9000, memberA]");
+        assertThat(query.getTransactionName()).isEqualTo("transferTx");
+        assertThat(query.getCaller()).startsWith("hello.jdbc.repository.MemberRepositoryV5.update");
+    }
+
+    @Test
+    void callerSkipsBatchHelper() {
+        SlowQueryLogDataSource dataSource = new SlowQueryLogDataSource(hikari, Duration.ZERO, 1.0,
+                SlowQueryLogDataSource.DEFAULT_CALLER_PACKAGE, captured::add);
+        new MemberRepositoryV4_1(dataSource).updateAll(new String[]{MEMBER_A}, new int[]{9000});
+
+        //PreparedStatement 를 실행하는 BatchBinder 가 아니라 리포지토리 프레임
+        assertThat(captured).hasSize(1);
+        assertThat(captured.get(0).getCaller()).startsWith("hello.jdbc.repository.MemberRepositoryV4_1.");
+    }
+
+    @Test
+    void belowThreshold() {
+        SlowQueryLogDataSource dataSource = new SlowQueryLogDataSource(hikari, Duration.ofMinutes(1), 1.0,
+                SlowQueryLogDataSource.DEFAULT_CALLER_PACKAGE, captured::add);
+        new MemberRepositoryV5(dataSource).findById(MEMBER_A);
+
+        assertThat(captured).isEmpty();
+    }
+
+    @Test
+    void notSampled() {
+        SlowQueryLogDataSource dataSource = new SlowQueryLogDataSource(hikari, Duration.ZERO, 0,
+                SlowQueryLogDataSource.DEFAULT_CALLER_PACKAGE, captured::add);
+        new MemberRepositoryV5(dataSource).findById(MEMBER_A);
+
+        assertThat(captured).isEmpty();
+    }
+}
@@ -0,0 +1,125 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV4_1;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * PreparedStatement 캐시
+ */
+@Slf4j
+class StatementCachingDataSourceTest {
+
+    static final String MEMBER_ID = "psCache";
+
+    HikariDataSource plainPool;
+    HikariDataSource cachingPool;
+    StatementCachingDataSource statementCache;
+
+    @BeforeEach
+    void beforeEach() {
+        plainPool = TestDatabase.hikari(1);
+
+        //풀 아래에 캐시를 둔다 - 물리 커넥션마다 캐시가 하나씩 생긴다
+        statementCache = new StatementCachingDataSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 2);
+        cachingPool = new HikariDataSource();
+        cachingPool.setDataSource(statementCache);
+        cachingPool.setMaximumPoolSize(1);
+
+        new MemberRepositoryV4_1(plainPool).save(new Member(MEMBER_ID, 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        new MemberRepositoryV4_1(plainPool).delete(MEMBER_ID);
+        plainPool.close();
+        cachingPool.close();
+    }
+
+    @Test
+    void closeReturnsStatementToCache() throws Exception {
+        String sql = "select * from member where member_id = ?";
+        try (Connection con = cachingPool.getConnection()) {
+            PreparedStatement first = con.prepareStatement(sql);
+            first.setString(1, MEMBER_ID);
+            first.executeQuery().close();
+            first.close();
+
+            //같은 SQL 은 캐시에서 꺼내고, 파라미터는 비워져 있다
+            PreparedStatement second = con.prepareStatement(sql);
+            second.setString(1, "none");
+            try (ResultSet rs = second.executeQuery()) {
+                assertThat(rs.next()).isFalse();
+            }
+            second.close();
+        }
+        assertThat(statementCache.getMissCount()).isEqualTo(1);
+        assertThat(statementCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void repositoryReusesStatements() {
+        MemberRepository repository = new MemberRepositoryV4_1(cachingPool);
+        for (int i = 0; i < 100; i++) {
+            repository.update(MEMBER_ID, i);
+            assertThat(repository.findById(MEMBER_ID).getMoney()).isEqualTo(i);
+        }
+        //커넥션이 하나뿐이고 SQL 은 두 개
+        assertThat(statementCache.getMissCount()).isEqualTo(2);
+        assertThat(statementCache.getHitCount()).isEqualTo(198);
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() throws Exception {
+        try (Connection con = cachingPool.getConnection()) {
+            con.prepareStatement("select 1").close();
+            con.prepareStatement("select 2").close();
+            con.prepareStatement("select 1").close();
+            //cacheSize=2 - 가장 오래 안 쓴 "select 2" 가 닫힌다
+            con.prepareStatement("select 3").close();
+            con.prepareStatement("select 1").close();
+        }
+        assertThat(statementCache.getEvictionCount()).isEqualTo(1);
+        assertThat(statementCache.getMissCount()).isEqualTo(3);
+        assertThat(statementCache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    void perCallLatency() {
+        long plain = measure("plain", plainPool);
+        long cached = measure("statement cache", cachingPool);
+        log.info("findById per call: plain={}ns, cached={}ns", plain, cached);
+    }
+
+    private long measure(String name, DataSource dataSource) {
+        MemberRepository repository = new MemberRepositoryV4_1(dataSource);
+        for (int i = 0; i < 2_000; i++) {
+            repository.findById(MEMBER_ID);
+        }
+
+        int calls = 20_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            repository.findById(MEMBER_ID);
+        }
+        long elapsed = System.nanoTime() - start;
+        log.info("{}: calls={}, elapsed={}ms", name, calls, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return elapsed / calls;
+    }
+}
@@ -0,0 +1,84 @@
+package hello.jdbc.exception.translator;
+
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ErrorCodeExceptionTranslator;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import hello.jdbc.repository.ex.StacklessDuplicateKeyException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.*;
+
+@Slf4j
+public class ErrorCodeExceptionTranslatorTest {
+
+    DataSource dataSource;
+    MemberRepositoryV4_2 repository;
+
+    @BeforeEach
+    void init() {
+        dataSource = new DriverManagerDataSource(URL, USERNAME, PASSWORD);
+        TestDatabase.init(dataSource);
+        repository = new MemberRepositoryV4_2(dataSource);
+    }
+
+    @AfterEach
+    void after() {
+        repository.delete("dupId");
+    }
+
+    @Test
+    void duplicateKeyIsStackless() {
+        repository.save(new Member("dupId", 0));
+
+        //스프링 예외 계층 그대로 DuplicateKeyException 으로 잡힌다
+        assertThatThrownBy(() -> repository.save(new Member("dupId", 0)))
+                .isInstanceOf(DuplicateKeyException.class)
+                .isInstanceOf(StacklessDuplicateKeyException.class)
+                .satisfies(e -> assertThat(e.getStackTrace()).isEmpty())
+                .hasCauseInstanceOf(SQLException.class);
+    }
+
+    @Test
+    void sameCategoryAsSpringTranslator() {
+        ErrorCodeExceptionTranslator translator = new ErrorCodeExceptionTranslator(dataSource);
+        SQLErrorCodeSQLExceptionTranslator springTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+
+        String[] sqls = {
+                "select bad grammer",
+                "insert into member(member_id, money) values ('dupId', 0)",
+                "insert into member(member_id, money) values (null, 0)",
+        };
+        repository.save(new Member("dupId", 0));
+
+        for (String sql : sqls) {
+            SQLException e = execute(sql);
+            DataAccessException expected = springTranslator.translate("test", sql, e);
+            DataAccessException actual = translator.translate("test", sql, e);
+            log.info("sql={}, spring={}, table={}", sql, expected.getClass().getSimpleName(), actual.getClass().getSimpleName());
+            assertThat(actual).isInstanceOf(expected.getClass());
+        }
+    }
+
+    private SQLException execute(String sql) {
+        try (Connection con = dataSource.getConnection(); PreparedStatement pstmt = con.prepareStatement(sql)) {
+            pstmt.execute();
+        } catch (SQLException e) {
+            return e;
+        }
+        throw new IllegalStateException("예외가 발생해야 합니다 sql=" + sql);
+    }
+}
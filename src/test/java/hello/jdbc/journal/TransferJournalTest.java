@@ -0,0 +1,146 @@
+package hello.jdbc.journal;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.service.MemberServiceV4;
+import hello.jdbc.service.TransferEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class TransferJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendRollAndReplay() {
+        try (TransferJournal journal = new TransferJournal(directory, 10, 4, Duration.ofMillis(5))) {
+            for (int i = 0; i < 25; i++) {
+                journal.append(new TransferEvent(i, "from" + i, "to" + i, i * 100, 1000L + i));
+            }
+            assertThat(journal.getRollCount()).isEqualTo(2);
+        }
+
+        List<TransferEvent> events = readAll();
+        assertThat(events).hasSize(25);
+        for (int i = 0; i < 25; i++) {
+            TransferEvent event = events.get(i);
+            assertThat(event.getTxId()).isEqualTo(i);
+            assertThat(event.getFromId()).isEqualTo("from" + i);
+            assertThat(event.getToId()).isEqualTo("to" + i);
+            assertThat(event.getAmount()).isEqualTo(i * 100);
+            assertThat(event.getTimestamp()).isEqualTo(1000L + i);
+        }
+    }
+
+    @Test
+    void groupSync() throws Exception {
+        int threads = 16;
+        int perThread = 200;
+        try (TransferJournal journal = new TransferJournal(directory, 1024, threads, Duration.ofMillis(2))) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.append(new TransferEvent(thread * perThread + i, "a", "b", 1, 0));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            executor.shutdown();
+
+            //force 한 번에 여러 레코드가 내려간다
+            log.info("appended={}, syncs={}, syncLatency=[{}]",
+                    journal.getAppendedCount(), journal.getSyncCount(), journal.syncLatency());
+            assertThat(journal.getSyncCount()).isLessThan(journal.getAppendedCount());
+        }
+        assertThat(readAll()).hasSize(threads * perThread);
+    }
+
+    @Test
+    void reopenAfterTornRecord() throws IOException {
+        try (TransferJournal journal = new TransferJournal(directory, 10, 1, Duration.ofMillis(5))) {
+            for (int i = 0; i < 3; i++) {
+                journal.append(new TransferEvent(i, "a", "b", 1, 0));
+            }
+        }
+
+        //세 번째 레코드를 쓰다 만 것처럼 만든다
+        try (FileChannel channel = FileChannel.open(TransferJournal.segmentPath(directory, 0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), 2L * JournalRecord.SIZE + 8);
+        }
+        assertThat(readAll()).hasSize(2);
+
+        //다시 열면 깨진 레코드 자리부터 쓴다
+        try (TransferJournal journal = new TransferJournal(directory, 10, 1, Duration.ofMillis(5))) {
+            journal.append(new TransferEvent(10, "a", "b", 1, 0));
+        }
+        List<TransferEvent> events = readAll();
+        assertThat(events).extracting(TransferEvent::getTxId).containsExactly(0L, 1L, 10L);
+    }
+
+    @Test
+    void onlyCommittedTransfers() {
+        HikariDataSource dataSource = TestDatabase.memory("journal");
+        MemberRepository memberRepository = new MemberRepositoryV5(dataSource);
+        MemberServiceV4 memberService = new MemberServiceV4(memberRepository);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        try (TransferJournal journal = new TransferJournal(directory, 10, 1, Duration.ofMillis(5))) {
+            memberService.addTransferListener(journal);
+            memberRepository.save(new Member("memberA", 10000));
+            memberRepository.save(new Member("ex", 10000));
+            memberRepository.save(new Member("memberB", 10000));
+
+            txTemplate.executeWithoutResult(status -> memberService.accountTransfer("memberA", "memberB", 2000));
+            //롤백된 이체는 기록되지 않는다
+            assertThatThrownBy(() -> txTemplate.executeWithoutResult(
+                    status -> memberService.accountTransfer("memberA", "ex", 2000)))
+                    .isInstanceOf(IllegalStateException.class);
+        } finally {
+            memberRepository.deleteAll(new String[]{"memberA", "memberB", "ex"});
+            dataSource.close();
+        }
+
+        List<TransferEvent> events = readAll();
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getFromId()).isEqualTo("memberA");
+        assertThat(events.get(0).getToId()).isEqualTo("memberB");
+        assertThat(events.get(0).getAmount()).isEqualTo(2000);
+    }
+
+    private List<TransferEvent> readAll() {
+        List<TransferEvent> events = new ArrayList<>();
+        try (JournalReader reader = new JournalReader(directory)) {
+            reader.replay(events::add);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,119 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class AsyncMemberRepositoryTest {
+
+    static final int POOL_SIZE = 10;
+    static final int CALLS = 10_000;
+
+    HikariDataSource dataSource;
+    MemberRepository repository;
+    AsyncMemberRepository asyncRepository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari(POOL_SIZE);
+
+        repository = new MemberRepositoryV5(dataSource);
+        asyncRepository = new AsyncMemberRepository(repository, POOL_SIZE);
+        repository.save(new Member("async", 10000));
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("async");
+        asyncRepository.close();
+        dataSource.close();
+    }
+
+    @Test
+    void crud() {
+        asyncRepository.increment("async", 500).join();
+        Member found = asyncRepository.findById("async").join();
+        assertThat(found.getMoney()).isEqualTo(10500);
+
+        //예외는 CompletableFuture 로 전달된다
+        assertThatThrownBy(() -> asyncRepository.findById("none").join())
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void concurrencyBoundedByPermits() {
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        List<CompletableFuture<Member>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            futures.add(asyncRepository.submit(repository -> {
+                maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                try {
+                    return repository.findById("async");
+                } finally {
+                    inUse.decrementAndGet();
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        assertThat(maxInUse.get()).isLessThanOrEqualTo(POOL_SIZE);
+        assertThat(dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection()).isZero();
+    }
+
+    /**
+     * findById 10000 번을 동시에 - 요청 스레드 200 개(톰캣 기본)가 막히면서 처리 vs 비동기
+     */
+    @Test
+    void tenThousandConcurrentFindById() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            repository.findById("async");
+        }
+
+        ExecutorService requestThreads = Executors.newFixedThreadPool(200);
+        long start = System.nanoTime();
+        List<Future<Member>> blocking = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            blocking.add(requestThreads.submit(() -> repository.findById("async")));
+        }
+        for (Future<Member> future : blocking) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        long blockingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        requestThreads.shutdown();
+
+        start = System.nanoTime();
+        List<CompletableFuture<Member>> async = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            async.add(asyncRepository.findById("async"));
+        }
+        long submitMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        CompletableFuture.allOf(async.toArray(new CompletableFuture[0])).get(1, TimeUnit.MINUTES);
+        long asyncMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        log.info("{} findById: blocking(200 threads)={}ms, async={}ms (submit {}ms, caller never blocked)",
+                CALLS, blockingMillis, asyncMillis, submitMillis);
+        assertThat(async).allMatch(future -> future.join().getMoney() == 10000);
+    }
+}
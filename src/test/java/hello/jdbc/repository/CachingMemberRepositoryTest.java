@@ -0,0 +1,122 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+/**
+ * 조회 캐시 - 히트/미스, 쓰기 무효화, 트랜잭션 경계
+ */
+class CachingMemberRepositoryTest {
+
+    MemberRepository target;
+    CachingMemberRepository repository;
+    TransactionTemplate txTemplate = new TransactionTemplate(new NoOpTransactionManager());
+
+    @BeforeEach
+    void beforeEach() {
+        target = mock(MemberRepository.class);
+        when(target.findById("memberA")).thenReturn(new Member("memberA", 10000));
+        repository = new CachingMemberRepository(target, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void readThrough() {
+        repository.findById("memberA");
+        Member member = repository.findById("memberA");
+
+        assertThat(member.getMoney()).isEqualTo(10000);
+        verify(target, times(1)).findById("memberA");
+        assertThat(repository.stats().hitCount()).isEqualTo(1);
+        assertThat(repository.stats().missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void updateInvalidates() {
+        repository.findById("memberA");
+        repository.update("memberA", 20000);
+        repository.findById("memberA");
+
+        verify(target, times(2)).findById("memberA");
+    }
+
+    @Test
+    void findByIdsUsesCache() {
+        when(target.findByIds(anyCollection())).thenReturn(Map.of("memberB", new Member("memberB", 5000)));
+        repository.findById("memberA");
+
+        Map<String, Member> members = repository.findByIds(List.of("memberA", "memberB"));
+
+        assertThat(members).containsOnlyKeys("memberA", "memberB");
+        verify(target).findByIds(List.of("memberB"));
+    }
+
+    @Test
+    void publishOnlyAfterCommit() {
+        txTemplate.executeWithoutResult(status -> {
+            repository.findById("memberA");
+            //커밋 전에는 캐시에 없다
+            assertThat(repository.estimatedSize()).isZero();
+        });
+        assertThat(repository.estimatedSize()).isEqualTo(1);
+    }
+
+    @Test
+    void rollbackPublishesNothing() {
+        txTemplate.executeWithoutResult(status -> {
+            repository.findById("memberA");
+            status.setRollbackOnly();
+        });
+        assertThat(repository.estimatedSize()).isZero();
+    }
+
+    @Test
+    void dirtyMemberBypassesCacheInTransaction() {
+        repository.findById("memberA");
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update("memberA", 20000);
+            repository.findById("memberA");
+            repository.findById("memberA");
+        });
+
+        // 캐시 1번 + 트랜잭션 안에서 2번
+        verify(target, times(3)).findById("memberA");
+        assertThat(repository.estimatedSize()).isZero();
+    }
+
+    /**
+     * 트랜잭션 동기화만 동작하는 테스트용 트랜잭션 매니저
+     */
+    static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
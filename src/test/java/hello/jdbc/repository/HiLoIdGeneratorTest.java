@@ -0,0 +1,149 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class HiLoIdGeneratorTest {
+
+    @Test
+    void sequential() {
+        StubSource source = new StubSource();
+        try (HiLoIdGenerator generator = new HiLoIdGenerator(source, 10, 0)) {
+            for (long expected = 0; expected < 25; expected++) {
+                assertThat(generator.nextValue()).isEqualTo(expected);
+            }
+            assertThat(generator.getReservedBlockCount()).isEqualTo(3);
+            assertThat(generator.getWaitCount()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void prefetch() throws InterruptedException {
+        StubSource source = new StubSource();
+        try (HiLoIdGenerator generator = new HiLoIdGenerator(source, 10, 5)) {
+            for (int i = 0; i < 6; i++) {
+                generator.nextValue();
+            }
+            //남은 id 가 5개가 된 시점에 다음 블록을 미리 예약한다
+            while (source.calls.get() < 2) {
+                Thread.sleep(1);
+            }
+            for (int i = 6; i < 15; i++) {
+                assertThat(generator.nextValue()).isEqualTo(i);
+            }
+            assertThat(generator.getPrefetchHitCount()).isEqualTo(1);
+            assertThat(generator.getWaitCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void memberId() {
+        StubSource source = new StubSource();
+        source.hi.set(1_000_000_000L);
+        try (HiLoIdGenerator generator = new HiLoIdGenerator(source, 1000, 100)) {
+            String memberId = generator.nextMemberId();
+            log.info("memberId={}", memberId);
+            assertThat(memberId).startsWith(HiLoIdGenerator.DEFAULT_PREFIX).hasSizeLessThanOrEqualTo(10);
+        }
+    }
+
+    @Test
+    void concurrentUnique() throws Exception {
+        int threads = 16;
+        int perThread = 10_000;
+        StubSource source = new StubSource();
+        Set<Long> issued = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (HiLoIdGenerator generator = new HiLoIdGenerator(source, 100, 50)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        issued.add(generator.nextValue());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            log.info("blocks={}, prefetchHits={}, waits={}",
+                    generator.getReservedBlockCount(), generator.getPrefetchHitCount(), generator.getWaitCount());
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(issued).hasSize(threads * perThread);
+    }
+
+    @Test
+    void signupWithoutDuplicateKey() throws Exception {
+        HikariDataSource dataSource = TestDatabase.hikari();
+
+        MemberRepository repository = new MemberRepositoryV5(dataSource);
+        Set<String> saved = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //노드 두 개가 같은 시퀀스에서 블록을 받아 동시에 가입시킨다
+        try (HiLoIdGenerator node1 = new HiLoIdGenerator(new SequenceIdBlockSource(dataSource, 50), 50, 10);
+             HiLoIdGenerator node2 = new HiLoIdGenerator(new SequenceIdBlockSource(dataSource, 50), 50, 10)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                HiLoIdGenerator generator = t % 2 == 0 ? node1 : node2;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        String memberId = generator.nextMemberId();
+                        repository.save(new Member(memberId, 0));
+                        saved.add(memberId);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+            assertThat(saved).hasSize(800);
+        } finally {
+            executor.shutdown();
+            repository.deleteAll(saved.toArray(new String[0]));
+            dataSource.close();
+        }
+    }
+
+    @Test
+    void sequenceSourceRejectsOtherBlockSize() {
+        //다른 크기로 예약하면 다른 노드의 블록과 겹칠 수 있다
+        SequenceIdBlockSource source = new SequenceIdBlockSource(new DriverManagerDataSource(URL, USERNAME, PASSWORD), 1000);
+
+        assertThatThrownBy(() -> source.reserve(100)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static class StubSource implements IdBlockSource {
+        final AtomicLong hi = new AtomicLong();
+        final AtomicLong calls = new AtomicLong();
+
+        @Override
+        public long reserve(int blockSize) {
+            calls.incrementAndGet();
+            return hi.getAndIncrement() * blockSize;
+        }
+    }
+}
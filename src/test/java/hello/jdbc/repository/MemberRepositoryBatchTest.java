@@ -0,0 +1,113 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 대량 처리 - saveAll, updateAll, deleteAll
+ */
+@Slf4j
+class MemberRepositoryBatchTest {
+
+    static final int COUNT = 10_000;
+
+    HikariDataSource dataSource;
+    MemberRepository repository;
+
+    String[] memberIds = new String[COUNT];
+    int[] moneys = new int[COUNT];
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari();
+
+        repository = new MemberRepositoryV5(dataSource, 500);
+
+        for (int i = 0; i < COUNT; i++) {
+            memberIds[i] = "bt" + i;
+            moneys[i] = i;
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(memberIds);
+        dataSource.close();
+    }
+
+    @Test
+    void batchCrud() {
+        repository.saveAll(memberIds, moneys);
+        assertThat(repository.findById("bt0").getMoney()).isEqualTo(0);
+        assertThat(repository.findById("bt9999").getMoney()).isEqualTo(9999);
+
+        int[] doubled = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            doubled[i] = moneys[i] * 2;
+        }
+        repository.updateAll(memberIds, doubled);
+        assertThat(repository.findById("bt9999").getMoney()).isEqualTo(19998);
+
+        repository.deleteAll(memberIds);
+        repository.saveAll(memberIds, moneys); // 지워졌다면 같은 키로 다시 저장할 수 있다
+    }
+
+    @Test
+    void findByIds() {
+        repository.saveAll(memberIds, moneys);
+
+        //청크(256개)를 여러 번 넘기고, 없는 회원도 섞는다
+        List<String> ids = new ArrayList<>(List.of(memberIds).subList(0, 1000));
+        ids.add("btNone");
+        Map<String, Member> members = repository.findByIds(ids);
+
+        assertThat(members).hasSize(1000);
+        assertThat(members.get("bt999").getMoney()).isEqualTo(999);
+        assertThat(members).doesNotContainKey("btNone");
+        assertThat(repository.findByIds(List.of("bt1", "bt2", "bt3"))).containsOnlyKeys("bt1", "bt2", "bt3");
+    }
+
+    @Test
+    void loopAndBatchWriteSameRows() {
+        //한 건씩 - 기존 방식 (시간 비교는 BatchBenchmark 에서 한다)
+        for (int i = 0; i < COUNT; i++) {
+            repository.save(new Member(memberIds[i], moneys[i]));
+        }
+        for (int i = 0; i < COUNT; i++) {
+            repository.update(memberIds[i], moneys[i] + 1);
+        }
+        Map<String, Member> looped = repository.findByIds(List.of(memberIds));
+        assertThat(looped).hasSize(COUNT);
+        assertThat(looped.values()).allMatch(member -> member.getMoney() == moneys(member) + 1);
+
+        repository.deleteAll(memberIds);
+        assertThat(repository.findByIds(List.of(memberIds))).isEmpty();
+
+        //배치
+        int[] plusOne = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            plusOne[i] = moneys[i] + 1;
+        }
+        repository.saveAll(memberIds, moneys);
+        repository.updateAll(memberIds, plusOne);
+        Map<String, Member> batched = repository.findByIds(List.of(memberIds));
+        assertThat(batched).hasSize(COUNT);
+        assertThat(batched.values()).allMatch(member -> member.getMoney() == moneys(member) + 1);
+    }
+
+    // 회원 id(bt + 번호)로 처음 저장한 금액을 찾는다
+    private int moneys(Member member) {
+        return moneys[Integer.parseInt(member.getMemberId().substring(2))];
+    }
+}
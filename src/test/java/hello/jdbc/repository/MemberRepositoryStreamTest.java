@@ -0,0 +1,90 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 전체 조회 - streamAll, forEach
+ */
+@Slf4j
+class MemberRepositoryStreamTest {
+
+    static final int COUNT = 5_000;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+
+    String[] memberIds = new String[COUNT];
+    int[] moneys = new int[COUNT];
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari();
+
+        repository = new MemberRepositoryV5(dataSource);
+        repository.setFetchSize(100);
+
+        for (int i = 0; i < COUNT; i++) {
+            memberIds[i] = "st" + i;
+            moneys[i] = 1;
+        }
+        repository.saveAll(memberIds, moneys);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(memberIds);
+        dataSource.close();
+    }
+
+    @Test
+    void streamAll() {
+        try (Stream<Member> members = repository.streamAll()) {
+            long sum = members.filter(m -> m.getMemberId().startsWith("st"))
+                    .mapToLong(Member::getMoney)
+                    .sum();
+            assertThat(sum).isEqualTo(COUNT);
+        }
+
+        //Stream 을 닫으면 커넥션이 풀로 돌아온다
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void streamAllInTransaction() {
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> {
+            try (Stream<Member> members = repository.streamAll()) {
+                assertThat(members.filter(m -> m.getMemberId().startsWith("st")).count()).isEqualTo(COUNT);
+            }
+            //트랜잭션이 커넥션을 계속 들고 있다
+            assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+        });
+
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void forEach() {
+        AtomicLong count = new AtomicLong();
+        repository.forEach(m -> {
+            if (m.getMemberId().startsWith("st")) {
+                count.incrementAndGet();
+            }
+        });
+        assertThat(count.get()).isEqualTo(COUNT);
+    }
+}
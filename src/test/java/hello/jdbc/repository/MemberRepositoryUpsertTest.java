@@ -0,0 +1,99 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * upsert, upsertAll - 저장하고 키 중복이면 update 하던 흐름을 한 문장으로
+ */
+class MemberRepositoryUpsertTest {
+
+    static final int COUNT = 1000;
+
+    HikariDataSource dataSource;
+    List<MemberRepository> repositories;
+
+    String[] memberIds = new String[COUNT];
+    int[] moneys = new int[COUNT];
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari();
+
+        repositories = List.of(new MemberRepositoryV4_1(dataSource), new MemberRepositoryV4_2(dataSource),
+                new MemberRepositoryV5(dataSource));
+
+        for (int i = 0; i < COUNT; i++) {
+            memberIds[i] = "up" + i;
+            moneys[i] = i;
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        repositories.get(0).deleteAll(memberIds);
+        dataSource.close();
+    }
+
+    @Test
+    void upsert() {
+        for (MemberRepository repository : repositories) {
+            assertThat(repository.upsert(new Member("up0", 1000))).isEqualTo(UpsertOutcome.INSERTED);
+            assertThat(repository.upsert(new Member("up0", 2000))).isEqualTo(UpsertOutcome.UPDATED);
+
+            Member found = repository.findById("up0");
+            assertThat(found.getMoney()).isEqualTo(2000);
+            assertThat(found.getVersion()).isEqualTo(1);
+
+            repository.delete("up0");
+        }
+    }
+
+    @Test
+    void upsertAll() {
+        for (MemberRepository repository : repositories) {
+            //절반은 미리 넣어둔다
+            String[] existing = new String[COUNT / 2];
+            int[] zeros = new int[COUNT / 2];
+            System.arraycopy(memberIds, 0, existing, 0, existing.length);
+            repository.saveAll(existing, zeros);
+
+            //1000 = 256 * 3 + 128 + 64 + 32 + 8 청크
+            UpsertOutcome[] outcomes = repository.upsertAll(memberIds, moneys);
+
+            for (int i = 0; i < COUNT; i++) {
+                assertThat(outcomes[i]).isEqualTo(i < COUNT / 2 ? UpsertOutcome.UPDATED : UpsertOutcome.INSERTED);
+            }
+            assertThat(repository.findById("up0").getVersion()).isEqualTo(1);
+            assertThat(repository.findById("up999").getMoney()).isEqualTo(999);
+
+            repository.deleteAll(memberIds);
+        }
+    }
+
+    @Test
+    void duplicateIdsAreRejected() {
+        //첫 청크(256) 안의 중복 up0, 청크를 넘는 중복 up2 - 아무것도 쓰기 전에 막는다
+        String[] duplicated = new String[258];
+        for (int i = 0; i < duplicated.length; i++) {
+            duplicated[i] = "up" + i;
+        }
+        duplicated[1] = "up0";
+        duplicated[257] = "up2";
+        for (MemberRepository repository : repositories) {
+            assertThatThrownBy(() -> repository.upsertAll(duplicated, new int[duplicated.length]))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("up0");
+            assertThat(repository.findByIds(List.of(duplicated))).isEmpty();
+        }
+    }
+}
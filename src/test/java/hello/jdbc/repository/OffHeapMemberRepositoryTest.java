@@ -0,0 +1,174 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class OffHeapMemberRepositoryTest {
+
+    static final int COUNT = 100;
+
+    HikariDataSource dataSource;
+    MemberRepository jdbcRepository;
+    String[] memberIds = new String[COUNT];
+    int[] moneys = new int[COUNT];
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari();
+        jdbcRepository = new MemberRepositoryV5(dataSource);
+
+        for (int i = 0; i < COUNT; i++) {
+            memberIds[i] = "oh" + i;
+            moneys[i] = i * 10;
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        jdbcRepository.deleteAll(memberIds);
+        dataSource.close();
+    }
+
+    @Test
+    void crud() {
+        OffHeapMemberRepository repository = new OffHeapMemberRepository(16);
+        repository.save(new Member("oh0", 1000));
+
+        assertThat(repository.findMoney("oh0")).isEqualTo(1000);
+        assertThatThrownBy(() -> repository.save(new Member("oh0", 1)))
+                .isInstanceOf(DuplicateKeyException.class);
+
+        assertThat(repository.increment("oh0", 500)).isEqualTo(1);
+        assertThat(repository.increment("none", 500)).isZero();
+        assertThat(repository.debitIfSufficient("oh0", 2000)).isFalse();
+        assertThat(repository.debitIfSufficient("oh0", 1500)).isTrue();
+
+        Member member = repository.findById("oh0");
+        assertThat(member.getMoney()).isZero();
+        assertThat(member.getVersion()).isEqualTo(2);
+        assertThatThrownBy(() -> repository.update("oh0", 100, 0))
+                .isInstanceOf(MyOptimisticLockException.class);
+
+        repository.delete("oh0");
+        assertThat(repository.contains("oh0")).isFalse();
+        assertThatThrownBy(() -> repository.findMoney("oh0")).isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.size()).isZero();
+    }
+
+    @Test
+    void growAndReuseTombstones() {
+        OffHeapMemberRepository repository = new OffHeapMemberRepository(16);
+        long initialBytes = repository.getOffHeapBytes();
+
+        repository.saveAll(memberIds, moneys);
+        assertThat(repository.getOffHeapBytes()).isGreaterThan(initialBytes);
+
+        //지우고 다시 넣어도 모두 찾는다
+        for (int i = 0; i < COUNT; i += 2) {
+            repository.delete(memberIds[i]);
+        }
+        UpsertOutcome[] outcomes = repository.upsertAll(memberIds, moneys);
+        for (int i = 0; i < COUNT; i++) {
+            assertThat(outcomes[i]).isEqualTo(i % 2 == 0 ? UpsertOutcome.INSERTED : UpsertOutcome.UPDATED);
+            assertThat(repository.findMoney(memberIds[i])).isEqualTo(moneys[i]);
+        }
+        assertThat(repository.size()).isEqualTo(COUNT);
+        try (Stream<Member> stream = repository.streamAll()) {
+            assertThat(stream.count()).isEqualTo(COUNT);
+        }
+    }
+
+    @Test
+    void streamWhileGrowing() {
+        OffHeapMemberRepository repository = new OffHeapMemberRepository(16);
+        repository.saveAll(new String[]{"oh0", "oh1", "oh2", "oh3"}, new int[4]);
+
+        //첫 회원을 읽은 뒤 테이블을 키워도 처음 테이블의 회원을 한 번씩만 읽는다
+        List<String> seen = new ArrayList<>();
+        try (Stream<Member> stream = repository.streamAll()) {
+            Iterator<Member> iterator = stream.iterator();
+            seen.add(iterator.next().getMemberId());
+            for (int i = 4; i < COUNT; i++) {
+                repository.save(new Member(memberIds[i], moneys[i]));
+            }
+            iterator.forEachRemaining(member -> seen.add(member.getMemberId()));
+        }
+
+        assertThat(seen).containsExactlyInAnyOrder("oh0", "oh1", "oh2", "oh3");
+    }
+
+    @Test
+    void keyLength() {
+        OffHeapMemberRepository repository = new OffHeapMemberRepository(16);
+        assertThatThrownBy(() -> repository.save(new Member("12345678901", 0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void concurrentIncrement() throws Exception {
+        OffHeapMemberRepository repository = new OffHeapMemberRepository(COUNT);
+        repository.saveAll(memberIds, new int[COUNT]);
+
+        int threads = 8;
+        int perThread = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    repository.increment(memberIds[i % COUNT], 1);
+                    repository.findMoney(memberIds[(i + 1) % COUNT]);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        long total = 0;
+        for (String memberId : memberIds) {
+            total += repository.findMoney(memberId);
+        }
+        assertThat(total).isEqualTo((long) threads * perThread);
+    }
+
+    @Test
+    void loadAndPersist() {
+        jdbcRepository.saveAll(memberIds, moneys);
+
+        OffHeapMemberRepository repository = new OffHeapMemberRepository(16);
+        repository.loadFrom(jdbcRepository);
+        for (int i = 0; i < COUNT; i++) {
+            assertThat(repository.findMoney(memberIds[i])).isEqualTo(moneys[i]);
+            repository.increment(memberIds[i], 1);
+        }
+        log.info("size={}, offHeapBytes={}", repository.size(), repository.getOffHeapBytes());
+
+        repository.persistTo(jdbcRepository);
+
+        assertThat(jdbcRepository.findByIds(List.of(memberIds)).values())
+                .allMatch(member -> member.getMoney() == repository.findMoney(member.getMemberId()));
+    }
+}
@@ -0,0 +1,135 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.connection.R2dbcConnectionUtil;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import io.r2dbc.pool.ConnectionPool;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 메모리 H2 - R2DBC 와 JDBC 가 같은 DB(reactive)를 본다
+ */
+@Slf4j
+class ReactiveMemberRepositoryTest {
+
+    static final String R2DBC_URL = "r2dbc:h2:mem:///reactive?options=DB_CLOSE_DELAY=-1";
+    static final String JDBC_URL = "jdbc:h2:mem:reactive;DB_CLOSE_DELAY=-1";
+    static final int POOL_SIZE = 16;
+
+    ConnectionPool connectionPool;
+    ReactiveMemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        connectionPool = R2dbcConnectionUtil.pooled(R2DBC_URL, "sa", "", POOL_SIZE);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).populate(connectionPool).block();
+        repository = new ReactiveMemberRepository(connectionPool);
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.delete("rx").block();
+        connectionPool.dispose();
+    }
+
+    @Test
+    void crud() {
+        StepVerifier.create(repository.save(new Member("rx", 10000)).then(repository.findById("rx")))
+                .assertNext(member -> {
+                    assertThat(member.getMoney()).isEqualTo(10000);
+                    assertThat(member.getVersion()).isZero();
+                })
+                .verifyComplete();
+
+        StepVerifier.create(repository.update("rx", 20000).then(repository.findById("rx")))
+                .assertNext(member -> assertThat(member.getMoney()).isEqualTo(20000))
+                .verifyComplete();
+
+        StepVerifier.create(repository.increment("rx", 500))
+                .expectNext(1)
+                .verifyComplete();
+
+        StepVerifier.create(repository.findByIds(List.of("rx", "none")).map(Member::getMemberId))
+                .expectNext("rx")
+                .verifyComplete();
+
+        repository.delete("rx").block();
+        StepVerifier.create(repository.findById("rx"))
+                .expectError(NoSuchElementException.class)
+                .verify();
+    }
+
+    @Test
+    void optimisticLock() {
+        repository.save(new Member("rx", 10000)).block();
+
+        StepVerifier.create(repository.update("rx", 9000, 0)).verifyComplete();
+        StepVerifier.create(repository.update("rx", 8000, 0))
+                .expectError(MyOptimisticLockException.class)
+                .verify();
+    }
+
+    /**
+     * findById 10000 번을 동시에 - JDBC(Hikari, 요청 스레드 200개) vs R2DBC(동시 구독 256개)
+     * 커넥션은 둘 다 16개
+     */
+    @Test
+    void throughputAgainstBlocking() throws Exception {
+        int calls = 10_000;
+        repository.save(new Member("rx", 10000)).block();
+
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(JDBC_URL);
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        MemberRepository blockingRepository = new MemberRepositoryV5(dataSource);
+        ExecutorService requestThreads = Executors.newFixedThreadPool(200);
+
+        try {
+            for (int round = 0; round < 2; round++) {
+                long start = System.nanoTime();
+                List<Future<Member>> futures = new ArrayList<>(calls);
+                for (int i = 0; i < calls; i++) {
+                    futures.add(requestThreads.submit(() -> blockingRepository.findById("rx")));
+                }
+                for (Future<Member> future : futures) {
+                    future.get(1, TimeUnit.MINUTES);
+                }
+                long blockingMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                Long found = Flux.range(0, calls)
+                        .flatMap(i -> repository.findById("rx"), 256)
+                        .count()
+                        .block();
+                long reactiveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+                // 첫 회는 워밍업
+                log.info("round={}, {} findById: jdbc(200 threads)={}ms, r2dbc={}ms",
+                        round, calls, blockingMillis, reactiveMillis);
+                assertThat(found).isEqualTo(calls);
+            }
+        } finally {
+            requestThreads.shutdown();
+            dataSource.close();
+        }
+    }
+}
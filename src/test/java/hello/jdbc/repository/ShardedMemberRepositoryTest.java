@@ -0,0 +1,106 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 메모리 H2 네 개로 나눈 회원
+ */
+class ShardedMemberRepositoryTest {
+
+    static final int SHARDS = 4;
+    static final int COUNT = 1000;
+
+    List<HikariDataSource> dataSources = new ArrayList<>();
+    ShardedMemberRepository repository;
+
+    String[] memberIds = new String[COUNT];
+    int[] moneys = new int[COUNT];
+
+    @BeforeEach
+    void beforeEach() {
+        List<MemberRepository> shards = new ArrayList<>();
+        for (int s = 0; s < SHARDS; s++) {
+            HikariDataSource dataSource = TestDatabase.memory("shard" + s);
+            dataSources.add(dataSource);
+            shards.add(new MemberRepositoryV5(dataSource));
+        }
+        repository = new ShardedMemberRepository(shards, new HashShardRouter(SHARDS));
+
+        for (int i = 0; i < COUNT; i++) {
+            memberIds[i] = "sh" + i;
+            moneys[i] = i;
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        repository.deleteAll(memberIds);
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void routing() {
+        repository.save(new Member("sh0", 100));
+
+        int shard = repository.shardOf("sh0");
+        assertThat(repository.shard(shard).findById("sh0").getMoney()).isEqualTo(100);
+        assertThat(repository.findById("sh0").getMoney()).isEqualTo(100);
+        for (int s = 0; s < SHARDS; s++) {
+            if (s != shard) {
+                assertThat(repository.shard(s).findByIds(List.of("sh0"))).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    void batchAcrossShards() {
+        repository.saveAll(memberIds, moneys);
+
+        //고르게 나뉜다
+        for (int s = 0; s < SHARDS; s++) {
+            try (Stream<Member> stream = repository.shard(s).streamAll()) {
+                long count = stream.filter(member -> member.getMemberId().startsWith("sh")).count();
+                assertThat(count).isBetween(COUNT / SHARDS / 2L, COUNT / SHARDS * 2L);
+            }
+        }
+
+        //결과는 넘긴 순서 그대로
+        int[] deltas = new int[COUNT];
+        Arrays.fill(deltas, 1);
+        int[] counts = repository.incrementAll(memberIds, deltas);
+        assertThat(counts).containsOnly(1);
+
+        Map<String, Member> found = repository.findByIds(List.of("sh1", "sh500", "sh999", "none"));
+        assertThat(found).hasSize(3);
+        assertThat(found.get("sh999").getMoney()).isEqualTo(1000);
+
+        try (Stream<Member> stream = repository.streamAll()) {
+            assertThat(stream.filter(member -> member.getMemberId().startsWith("sh")).count()).isEqualTo(COUNT);
+        }
+    }
+
+    @Test
+    void upsertAllAcrossShards() {
+        String[] half = Arrays.copyOf(memberIds, COUNT / 2);
+        repository.saveAll(half, new int[half.length]);
+
+        UpsertOutcome[] outcomes = repository.upsertAll(memberIds, moneys);
+
+        for (int i = 0; i < COUNT; i++) {
+            assertThat(outcomes[i]).isEqualTo(i < COUNT / 2 ? UpsertOutcome.UPDATED : UpsertOutcome.INSERTED);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class WriteBehindMemberRepositoryTest {
+
+    static final int COUNT = 10;
+
+    HikariDataSource dataSource;
+    MemberRepository target;
+    WriteBehindMemberRepository repository;
+    String[] memberIds = new String[COUNT];
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari();
+        target = new MemberRepositoryV5(dataSource);
+
+        for (int i = 0; i < COUNT; i++) {
+            memberIds[i] = "wb" + i;
+        }
+        target.saveAll(memberIds, new int[COUNT]);
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (repository != null) {
+            repository.close();
+        }
+        target.deleteAll(memberIds);
+        dataSource.close();
+    }
+
+    @Test
+    void coalesceAndReadOwnWrites() {
+        repository = new WriteBehindMemberRepository(target, 100, Duration.ofMinutes(1), 1000, Duration.ofSeconds(1));
+
+        for (int i = 1; i <= 10; i++) {
+            repository.update("wb0", i * 100);
+        }
+
+        //반영 전 - DB 는 그대로, 이 리포지토리로 읽으면 마지막 값
+        assertThat(target.findById("wb0").getMoney()).isZero();
+        assertThat(repository.findById("wb0").getMoney()).isEqualTo(1000);
+        assertThat(repository.getBufferDepth()).isEqualTo(1);
+
+        repository.flush();
+
+        assertThat(target.findById("wb0").getMoney()).isEqualTo(1000);
+        assertThat(repository.getBufferDepth()).isZero();
+        assertThat(repository.getFlushedRowCount()).isEqualTo(1);
+        assertThat(repository.getCoalescedCount()).isEqualTo(9);
+    }
+
+    @Test
+    void sizeTrigger() throws InterruptedException {
+        repository = new WriteBehindMemberRepository(target, COUNT, Duration.ofMinutes(1), 1000, Duration.ofSeconds(1));
+
+        for (int i = 0; i < COUNT; i++) {
+            repository.update(memberIds[i], 500);
+        }
+
+        awaitTrue(() -> repository.getFlushCount() == 1);
+        assertThat(target.findByIds(List.of(memberIds)).values())
+                .allMatch(member -> member.getMoney() == 500);
+    }
+
+    @Test
+    void timeTrigger() throws InterruptedException {
+        repository = new WriteBehindMemberRepository(target, 100, Duration.ofMillis(100), 1000, Duration.ofSeconds(1));
+
+        repository.update("wb0", 700);
+
+        awaitTrue(() -> target.findById("wb0").getMoney() == 700);
+        log.info("flushLatency=[{}]", repository.flushLatency());
+    }
+
+    @Test
+    void backpressure() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        MemberRepository slowTarget = new MemberRepositoryV5(dataSource) {
+            @Override
+            public void updateAll(String[] memberIds, int[] moneys) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.updateAll(memberIds, moneys);
+            }
+        };
+        repository = new WriteBehindMemberRepository(slowTarget, 2, Duration.ofMinutes(1), 2, Duration.ofMillis(100));
+
+        //두 개가 차면 반영을 시작하지만 DB 가 느려서 버퍼가 비지 않는다
+        repository.update("wb0", 1);
+        repository.update("wb1", 1);
+        //이미 있는 회원은 자리를 더 차지하지 않는다
+        repository.update("wb0", 2);
+
+        assertThatThrownBy(() -> repository.update("wb2", 1)).isInstanceOf(RejectedExecutionException.class);
+        assertThat(repository.getRejectedCount()).isEqualTo(1);
+
+        release.countDown();
+        repository.update("wb2", 1);
+        assertThat(repository.getBackpressureWaitCount()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void flushSurvivesCallerRollback() {
+        repository = new WriteBehindMemberRepository(target, 100, Duration.ofMinutes(1), 1000, Duration.ofSeconds(1));
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository.update("wb0", 300);
+
+        //increment 가 트랜잭션 안에서 버퍼를 반영시키고, 그 트랜잭션은 롤백된다
+        txTemplate.executeWithoutResult(status -> {
+            repository.increment("wb0", 1);
+            status.setRollbackOnly();
+        });
+
+        //반영은 반영 스레드의 커넥션으로 커밋됐으므로 increment 만 취소된다
+        assertThat(repository.getBufferDepth()).isZero();
+        assertThat(target.findById("wb0").getMoney()).isEqualTo(300);
+    }
+
+    @Test
+    void flushDuringBatchRead() {
+        //DB 에서 읽은 직후, 돌려주기 전에 반영이 끝난다
+        WriteBehindMemberRepository[] self = new WriteBehindMemberRepository[1];
+        MemberRepository racingTarget = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Map<String, Member> findByIds(Collection<String> memberIds) {
+                Map<String, Member> members = super.findByIds(memberIds);
+                self[0].flush();
+                return members;
+            }
+        };
+        repository = new WriteBehindMemberRepository(racingTarget, 100, Duration.ofMinutes(1), 1000, Duration.ofSeconds(1));
+        self[0] = repository;
+        repository.update("wb0", 800);
+
+        assertThat(repository.findByIds(List.of("wb0", "wb1")).get("wb0").getMoney()).isEqualTo(800);
+        assertThat(repository.getBufferDepth()).isZero();
+    }
+
+    @Test
+    void updateAfterCloseIsRejected() {
+        repository = new WriteBehindMemberRepository(target, 100, Duration.ofMinutes(1), 1000, Duration.ofSeconds(1));
+        repository.close();
+
+        assertThatThrownBy(() -> repository.update("wb0", 1)).isInstanceOf(RejectedExecutionException.class);
+        assertThat(repository.getBufferDepth()).isZero();
+        repository = null;
+    }
+
+    @Test
+    void flushOnClose() {
+        repository = new WriteBehindMemberRepository(target, 100, Duration.ofMinutes(1), 1000, Duration.ofSeconds(1));
+        repository.update("wb0", 900);
+
+        repository.close();
+        repository = null;
+
+        assertThat(target.findById("wb0").getMoney()).isEqualTo(900);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
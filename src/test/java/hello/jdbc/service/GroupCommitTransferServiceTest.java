@@ -0,0 +1,131 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 그룹 커밋 계좌이체
+ */
+@Slf4j
+class GroupCommitTransferServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_C = "memberC";
+    public static final String MEMBER_EX = "ex";
+
+    HikariDataSource dataSource;
+    MemberRepository memberRepository;
+    GroupCommitTransferService transferService;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = TestDatabase.hikari();
+
+        memberRepository = new MemberRepositoryV5(dataSource);
+        transferService = new GroupCommitTransferService(memberRepository, new DataSourceTransactionManager(dataSource),
+                100, Duration.ofMillis(5), 10_000);
+
+        memberRepository.save(new Member(MEMBER_A, 100000));
+        memberRepository.save(new Member(MEMBER_B, 100000));
+        memberRepository.save(new Member(MEMBER_C, 100000));
+        memberRepository.save(new Member(MEMBER_EX, 100000));
+    }
+
+    @AfterEach
+    void afterEach() throws InterruptedException {
+        transferService.close();
+        memberRepository.deleteAll(new String[]{MEMBER_A, MEMBER_B, MEMBER_C, MEMBER_EX});
+        dataSource.close();
+    }
+
+    @Test
+    void netting() throws Exception {
+        //A->B 1000번, B->C 500번
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(transferService.submit(MEMBER_A, MEMBER_B, 10));
+            if (i % 2 == 0) {
+                futures.add(transferService.submit(MEMBER_B, MEMBER_C, 10));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(1, TimeUnit.MINUTES);
+
+        log.info("transfers={}, batches={}", transferService.getCommittedCount(), transferService.getBatchCount());
+        assertThat(transferService.getCommittedCount()).isEqualTo(1500);
+        assertThat(transferService.getBatchCount()).isLessThan(1500);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(90000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(105000);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(105000);
+    }
+
+    @Test
+    void validationFailureRejectsOnlyThatTransfer() throws Exception {
+        CompletableFuture<Void> ok1 = transferService.submit(MEMBER_A, MEMBER_B, 2000);
+        CompletableFuture<Void> ex = transferService.submit(MEMBER_A, MEMBER_EX, 2000);
+        CompletableFuture<Void> ok2 = transferService.submit(MEMBER_B, MEMBER_C, 1000);
+
+        ok1.get(10, TimeUnit.SECONDS);
+        ok2.get(10, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> ex.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(98000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(101000);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(101000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(100000);
+    }
+
+    @Test
+    void missingMemberRejectsOnlyThatTransfer() throws Exception {
+        CompletableFuture<Void> ok = transferService.submit(MEMBER_A, MEMBER_B, 2000);
+        CompletableFuture<Void> missing = transferService.submit(MEMBER_A, "unknown", 2000);
+
+        ok.get(10, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> missing.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NoSuchElementException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(98000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(102000);
+    }
+
+    @Test
+    void closeFinishesAcceptedTransfers() throws Exception {
+        //maxDelay 가 길어서 close 할 때는 아직 배치를 모으는 중이다
+        transferService.close();
+        transferService = new GroupCommitTransferService(memberRepository, new DataSourceTransactionManager(dataSource),
+                100, Duration.ofSeconds(10), 10_000);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(transferService.submit(MEMBER_A, MEMBER_B, 100));
+        }
+
+        transferService.close();
+
+        assertThat(futures).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+        assertThat(transferService.submit(MEMBER_A, MEMBER_B, 100)).isCompletedExceptionally();
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(101000);
+    }
+}
@@ -0,0 +1,149 @@
+package hello.jdbc.service;
+
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+/**
+ * 낙관적 락 - version 컬럼 + 재시도
+ */
+
+@Slf4j
+@SpringBootTest
+class MemberServiceV4OptimisticTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public TestConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            RetryPolicy retryPolicy = new RetryPolicy(50, Duration.ofMillis(1), Duration.ofMillis(20), 1.0, 1000);
+            MemberServiceV4 memberService = new MemberServiceV4(memberRepository(), TransferMode.OPTIMISTIC, retryPolicy);
+            //재시도는 트랜잭션 밖에서 - 시도마다 새 트랜잭션
+            memberService.setTransactionManager(transactionManager);
+            return memberService;
+        }
+    }
+
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @Test
+    @DisplayName("version 불일치")
+    void versionMismatch() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        Member member = memberRepository.findById(MEMBER_A);
+
+        memberRepository.update(MEMBER_A, 9000, member.getVersion());
+        assertThat(memberRepository.findById(MEMBER_A).getVersion()).isEqualTo(member.getVersion() + 1);
+
+        //예전 version 으로는 변경할 수 없다
+        assertThatThrownBy(() -> memberRepository.update(MEMBER_A, 8000, member.getVersion()))
+                .isInstanceOf(MyOptimisticLockException.class);
+    }
+
+    @Test
+    @DisplayName("이체 중 예외 발생")
+    void accountTransferEx() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        assertThatThrownBy(() -> memberService.transfer(MEMBER_A, MEMBER_EX, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("동시 이체 - 충돌은 재시도로 해결되고 갱신 손실이 없다")
+    void concurrentTransfers() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 100000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        int threads = 4;
+        int transfers = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < transfers; i++) {
+                    try {
+                        memberService.transfer(MEMBER_A, MEMBER_B, 10);
+                    } catch (MyOptimisticLockException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        RetryPolicy retryPolicy = memberService.getRetryPolicy();
+        log.info("calls={}, conflicts={}, retries={}, failures={}", retryPolicy.getCallCount(),
+                retryPolicy.getConflictCount(), retryPolicy.getRetryCount(), retryPolicy.getFailureCount());
+
+        //성공한 이체만큼 정확히 옮겨졌다
+        int succeeded = threads * transfers - failures.get();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(100000 - succeeded * 10);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(succeeded * 10);
+    }
+}
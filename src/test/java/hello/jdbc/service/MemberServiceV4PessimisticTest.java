@@ -0,0 +1,118 @@
+package hello.jdbc.service;
+
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * 비관적 락 - 정렬된 select ... for update
+ * 반대 방향 이체를 동시에 돌려도 교착 상태가 없어야 한다
+ */
+
+@Slf4j
+@SpringBootTest
+class MemberServiceV4PessimisticTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    static final int THREADS = 8;
+    static final int TRANSFERS_PER_THREAD = 100;
+
+
+    @Autowired
+    private MemberRepository memberRepository;
+    @Autowired
+    private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class TestConfig {
+
+        private final DataSource dataSource;
+
+        public TestConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+            repository.setLockTimeoutSeconds(5);
+            return repository;
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository(), TransferMode.PESSIMISTIC);
+        }
+    }
+
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    @DisplayName("A->B, B->A 동시 이체")
+    void crossingTransfers() throws Exception {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 100000));
+        memberRepository.save(new Member(MEMBER_B, 100000));
+
+        //when - 절반은 A->B, 절반은 B->A
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            boolean forward = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    try {
+                        if (forward) {
+                            memberService.accountTransfer(MEMBER_A, MEMBER_B, 10);
+                        } else {
+                            memberService.accountTransfer(MEMBER_B, MEMBER_A, 10);
+                        }
+                    } catch (Exception e) {
+                        log.info("transfer failed", e);
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        //then - 실패(교착 상태, 락 타임아웃)가 없고 양쪽 이체 횟수가 같으므로 잔액이 그대로다
+        assertThat(failures.get()).isZero();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(100000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(100000);
+    }
+}
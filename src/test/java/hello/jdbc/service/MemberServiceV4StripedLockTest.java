@@ -0,0 +1,189 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 회원 스트라이프 락 - Zipf 분포(소수 회원에 이체가 몰리는) 부하에서 기존 방식과 비교
+ */
+@Slf4j
+class MemberServiceV4StripedLockTest {
+
+    static final int MEMBERS = 100;
+    static final int INITIAL_MONEY = 1_000_000;
+    static final int THREADS = 16;
+    static final int TRANSFERS_PER_THREAD = 200;
+    static final double ZIPF_EXPONENT = 1.1;
+
+    HikariDataSource hikari;
+    String[] memberIds = new String[MEMBERS];
+    double[] zipfCdf = new double[MEMBERS];
+
+    @BeforeEach
+    void beforeEach() {
+        hikari = TestDatabase.hikari(4); // 스레드보다 커넥션이 적다
+
+        int[] moneys = new int[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            memberIds[i] = "zf" + i;
+            moneys[i] = INITIAL_MONEY;
+        }
+        new MemberRepositoryV5(hikari).saveAll(memberIds, moneys);
+
+        //i 번째 회원이 뽑힐 확률은 1 / (i+1)^s 에 비례
+        double sum = 0;
+        for (int i = 0; i < MEMBERS; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            zipfCdf[i] = sum;
+        }
+        for (int i = 0; i < MEMBERS; i++) {
+            zipfCdf[i] /= sum;
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        new MemberRepositoryV5(hikari).deleteAll(memberIds);
+        hikari.close();
+    }
+
+    @Test
+    void pessimistic() throws Exception {
+        //기존 방식 - 행 락(select ... for update)을 커넥션을 든 채로 기다린다
+        MemberRepositoryV5 repository = new MemberRepositoryV5(hikari);
+        repository.setLockTimeoutSeconds(10);
+        MemberServiceV4 service = new MemberServiceV4(repository, TransferMode.PESSIMISTIC);
+
+        //프록시가 아닌 서비스를 직접 쓰므로 TransactionTemplate 으로 트랜잭션을 건다
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(hikari));
+        run("pessimistic", (fromId, toId) ->
+                txTemplate.executeWithoutResult(status -> service.accountTransfer(fromId, toId, 1)));
+    }
+
+    @Test
+    void stripedNonFair() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(64, false);
+        MemberServiceV4 service = stripedService(lockManager);
+        run("striped(non-fair)", (fromId, toId) -> service.transfer(fromId, toId, 1));
+        logHotStripes(lockManager);
+    }
+
+    @Test
+    void stripedFair() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(64, true);
+        MemberServiceV4 service = stripedService(lockManager);
+        run("striped(fair)", (fromId, toId) -> service.transfer(fromId, toId, 1));
+        logHotStripes(lockManager);
+    }
+
+    @Test
+    void lockBeforeConnection() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(64, false);
+        MemberServiceV4 service = stripedService(lockManager);
+
+        //다른 이체가 스트라이프를 잡고 있다
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> waiting;
+        try (StripedLockManager.Acquired held = lockManager.acquire(memberIds[0], memberIds[1])) {
+            waiting = executor.submit(() -> service.transfer(memberIds[0], memberIds[1], 1));
+            Thread.sleep(200);
+            assertThat(waiting.isDone()).isFalse();
+
+            //락을 기다리는 이체는 커넥션을 빌리지 않았다
+            assertThat(hikari.getHikariPoolMXBean().getActiveConnections()).isZero();
+        }
+        waiting.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    //transfer 는 락을 잡은 뒤에 트랜잭션을 시작하므로 락을 기다리는 동안 커넥션을 들고 있지 않다
+    //같은 회원의 이체는 스트라이프 락으로 직렬화되므로 락 없는 조회-변경-저장으로도 갱신 손실이 없다
+    private MemberServiceV4 stripedService(StripedLockManager lockManager) {
+        MemberServiceV4 service = new MemberServiceV4(new MemberRepositoryV5(hikari), TransferMode.READ_MODIFY_WRITE);
+        service.setLockManager(lockManager);
+        service.setTransactionManager(new DataSourceTransactionManager(hikari));
+        return service;
+    }
+
+    private void run(String name, BiConsumer<String, String> transfer) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger failures = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = nextZipf();
+                    int to = nextZipf();
+                    while (to == from) {
+                        to = nextZipf();
+                    }
+                    String fromId = memberIds[from];
+                    String toId = memberIds[to];
+                    try {
+                        transfer.accept(fromId, toId);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.MINUTES);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        executor.shutdown();
+
+        int transfers = THREADS * TRANSFERS_PER_THREAD;
+        log.info("{}: transfers={}, failures={}, elapsed={}ms, throughput={}/s",
+                name, transfers, failures.get(), elapsedMs, transfers * 1000L / Math.max(elapsedMs, 1));
+
+        //실패한 이체는 롤백되므로 전체 잔액은 그대로다
+        MemberRepository repository = new MemberRepositoryV5(hikari);
+        long total = repository.findByIds(Arrays.asList(memberIds)).values().stream()
+                .mapToLong(m -> m.getMoney())
+                .sum();
+        assertThat(total).isEqualTo((long) MEMBERS * INITIAL_MONEY);
+    }
+
+    private void logHotStripes(StripedLockManager lockManager) {
+        lockManager.stats().stream()
+                .sorted(Comparator.comparingLong(StripedLockManager.StripeStats::getWaitNanos).reversed())
+                .limit(5)
+                .forEach(stats -> log.info("hot {}", stats));
+    }
+
+    private int nextZipf() {
+        int index = Arrays.binarySearch(zipfCdf, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, MEMBERS - 1);
+    }
+}
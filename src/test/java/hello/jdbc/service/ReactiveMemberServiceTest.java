@@ -0,0 +1,78 @@
+package hello.jdbc.service;
+
+import hello.jdbc.connection.R2dbcConnectionUtil;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ReactiveMemberRepository;
+import io.r2dbc.pool.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.connection.init.ResourceDatabasePopulator;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 리액티브 트랜잭션 - TransactionalOperator
+ */
+class ReactiveMemberServiceTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+
+    ConnectionPool connectionPool;
+    ReactiveMemberRepository memberRepository;
+    ReactiveMemberService memberService;
+
+    @BeforeEach
+    void beforeEach() {
+        connectionPool = R2dbcConnectionUtil.pooled("r2dbc:h2:mem:///reactiveService?options=DB_CLOSE_DELAY=-1",
+                "sa", "", 4);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).populate(connectionPool).block();
+
+        memberRepository = new ReactiveMemberRepository(connectionPool);
+        TransactionalOperator transactionalOperator =
+                TransactionalOperator.create(new R2dbcTransactionManager(connectionPool));
+        memberService = new ReactiveMemberService(memberRepository, transactionalOperator);
+    }
+
+    @AfterEach
+    void afterEach() {
+        memberRepository.delete(MEMBER_A)
+                .then(memberRepository.delete(MEMBER_B))
+                .then(memberRepository.delete(MEMBER_EX))
+                .block();
+        connectionPool.dispose();
+    }
+
+    @Test
+    void accountTransfer() {
+        memberRepository.save(new Member(MEMBER_A, 10000))
+                .then(memberRepository.save(new Member(MEMBER_B, 10000)))
+                .block();
+
+        StepVerifier.create(memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000)).verifyComplete();
+
+        assertThat(memberRepository.findById(MEMBER_A).block().getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).block().getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void accountTransferEx() {
+        memberRepository.save(new Member(MEMBER_A, 10000))
+                .then(memberRepository.save(new Member(MEMBER_EX, 10000)))
+                .block();
+
+        StepVerifier.create(memberService.accountTransfer(MEMBER_A, MEMBER_EX, 2000))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        //에러 신호로 롤백된다
+        assertThat(memberRepository.findById(MEMBER_A).block().getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_EX).block().getMoney()).isEqualTo(10000);
+    }
+}
@@ -0,0 +1,72 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.ex.MyOptimisticLockException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    @Test
+    void retryUntilSuccess() {
+        RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(1), Duration.ofMillis(5), 1.0, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        policy.execute(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new MyOptimisticLockException("conflict");
+            }
+        });
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(policy.getConflictCount()).isEqualTo(2);
+        assertThat(policy.getRetryCount()).isEqualTo(2);
+        assertThat(policy.getFailureCount()).isZero();
+    }
+
+    @Test
+    void maxAttempts() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ZERO, Duration.ZERO, 1.0, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.execute(() -> {
+            attempts.incrementAndGet();
+            throw new MyOptimisticLockException("conflict");
+        })).isInstanceOf(MyOptimisticLockException.class);
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(policy.getFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    void budgetExhausted() {
+        //토큰 1개만 - 첫 재시도 후에는 예산이 없다
+        RetryPolicy policy = new RetryPolicy(10, Duration.ZERO, Duration.ZERO, 0, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.execute(() -> {
+            attempts.incrementAndGet();
+            throw new MyOptimisticLockException("conflict");
+        })).isInstanceOf(MyOptimisticLockException.class);
+
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(policy.getBudgetExhaustedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void otherExceptionIsNotRetried() {
+        RetryPolicy policy = RetryPolicy.defaultPolicy();
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> policy.execute(() -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("ex");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(attempts.get()).isEqualTo(1);
+    }
+}
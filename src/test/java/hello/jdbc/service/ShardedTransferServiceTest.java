@@ -0,0 +1,260 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.TestDatabase;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.HashShardRouter;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ShardedMemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 샤드 간 계좌이체 - 메모리 H2 여러 개
+ */
+@Slf4j
+class ShardedTransferServiceTest {
+
+    List<HikariDataSource> dataSources = new ArrayList<>();
+    ShardedMemberRepository memberRepository;
+    ShardedTransferService transferService;
+    List<String> memberIds = new ArrayList<>();
+
+    @AfterEach
+    void afterEach() {
+        memberRepository.deleteAll(memberIds.toArray(new String[0]));
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void sameShard() {
+        setup(2);
+        String fromId = "ss0";
+        String toId = sameShardAs(fromId);
+        save(fromId, 10000);
+        save(toId, 10000);
+
+        transferService.accountTransfer(fromId, toId, 2000);
+
+        assertThat(memberRepository.findById(fromId).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(toId).getMoney()).isEqualTo(12000);
+        assertThat(transferService.getLocalTransferCount()).isEqualTo(1);
+    }
+
+    @Test
+    void crossShard() {
+        setup(2);
+        String fromId = "ss0";
+        String toId = otherShardThan(fromId);
+        save(fromId, 10000);
+        save(toId, 10000);
+
+        transferService.accountTransfer(fromId, toId, 2000);
+
+        assertThat(memberRepository.findById(fromId).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(toId).getMoney()).isEqualTo(12000);
+        assertThat(transferService.getCrossShardTransferCount()).isEqualTo(1);
+    }
+
+    @Test
+    void crossShardCompensation() {
+        setup(2);
+        //"ex" 와 다른 샤드의 회원이 보낸다
+        String fromId = otherShardThan("ex");
+        save(fromId, 10000);
+        save("ex", 10000);
+
+        assertThatThrownBy(() -> transferService.accountTransfer(fromId, "ex", 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        //출금은 커밋됐지만 보상으로 되돌아온다
+        assertThat(memberRepository.findById(fromId).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById("ex").getMoney()).isEqualTo(10000);
+        assertThat(transferService.getCompensatedCount()).isEqualTo(1);
+        assertThat(transferService.getCompensationFailureCount()).isZero();
+    }
+
+    @Test
+    void crossShardCompensationFailsWhenSenderIsGone() {
+        setup(2);
+        String fromId = "ss0";
+        String toId = otherShardThan(fromId);
+        save(fromId, 10000);
+
+        //받는 쪽 트랜잭션을 시작할 때 보낸 회원이 지워진다 - 받는 회원은 없어서 입금이 롤백된다
+        int fromShard = memberRepository.shardOf(fromId);
+        int toShard = memberRepository.shardOf(toId);
+        List<PlatformTransactionManager> transactionManagers = new ArrayList<>();
+        for (int s = 0; s < dataSources.size(); s++) {
+            transactionManagers.add(s != toShard ? new DataSourceTransactionManager(dataSources.get(s))
+                    : new DataSourceTransactionManager(dataSources.get(s)) {
+                @Override
+                protected void doBegin(Object transaction, TransactionDefinition definition) {
+                    new JdbcTemplate(dataSources.get(fromShard)).update("delete from member where member_id = ?", fromId);
+                    super.doBegin(transaction, definition);
+                }
+            });
+        }
+        transferService = new ShardedTransferService(memberRepository, transactionManagers);
+
+        assertThatThrownBy(() -> transferService.accountTransfer(fromId, toId, 2000))
+                .isInstanceOf(NoSuchElementException.class)
+                .satisfies(e -> assertThat(e.getSuppressed()).hasSize(1));
+
+        //되돌릴 행이 없으면 보상 실패로 센다
+        assertThat(transferService.getCompensatedCount()).isZero();
+        assertThat(transferService.getCompensationFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    void crossShardCommitInDoubt() {
+        setup(2);
+        String fromId = "ss0";
+        String toId = otherShardThan(fromId);
+        save(fromId, 10000);
+        save(toId, 10000);
+
+        //받는 쪽 샤드는 커밋한 뒤 응답을 잃은 것처럼 실패한다
+        int toShard = memberRepository.shardOf(toId);
+        List<PlatformTransactionManager> transactionManagers = new ArrayList<>();
+        for (int s = 0; s < dataSources.size(); s++) {
+            transactionManagers.add(s != toShard ? new DataSourceTransactionManager(dataSources.get(s))
+                    : new DataSourceTransactionManager(dataSources.get(s)) {
+                @Override
+                protected void doCommit(DefaultTransactionStatus status) {
+                    super.doCommit(status);
+                    throw new TransactionSystemException("커밋 응답 없음");
+                }
+            });
+        }
+        transferService = new ShardedTransferService(memberRepository, transactionManagers);
+
+        assertThatThrownBy(() -> transferService.accountTransfer(fromId, toId, 2000))
+                .isInstanceOf(TransactionSystemException.class);
+
+        //커밋됐을 수 있으므로 되돌리지 않는다
+        assertThat(memberRepository.findById(fromId).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(toId).getMoney()).isEqualTo(12000);
+        assertThat(transferService.getInDoubtCount()).isEqualTo(1);
+        assertThat(transferService.getCompensatedCount()).isZero();
+    }
+
+    @Test
+    void crossShardInsufficientBalance() {
+        setup(2);
+        String fromId = "ss0";
+        String toId = otherShardThan(fromId);
+        save(fromId, 1000);
+        save(toId, 10000);
+
+        assertThatThrownBy(() -> transferService.accountTransfer(fromId, toId, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(fromId).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(toId).getMoney()).isEqualTo(10000);
+        assertThat(transferService.getCompensatedCount()).isZero();
+    }
+
+    /**
+     * 회원 64명 사이 무작위 이체, 16 스레드 - 샤드 1, 2, 4 개 처리량 비교
+     * 이체 전후 전체 잔액이 같아야 한다
+     */
+    @Test
+    void throughputByShardCount() throws Exception {
+        for (int shards : new int[]{1, 2, 4}) {
+            setup(shards);
+            int members = 64;
+            for (int i = 0; i < members; i++) {
+                save("tp" + i, 1_000_000);
+            }
+
+            int threads = 16;
+            int perThread = 500;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        int from = random.nextInt(members);
+                        int to = (from + 1 + random.nextInt(members - 1)) % members;
+                        transferService.accountTransfer("tp" + from, "tp" + to, 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(2, TimeUnit.MINUTES);
+            }
+            long elapsed = System.nanoTime() - start;
+            executor.shutdown();
+
+            long total = memberRepository.findByIds(memberIds).values().stream().mapToLong(Member::getMoney).sum();
+            log.info("shards={}, transfers/s={}, local={}, crossShard={}", shards,
+                    threads * perThread * TimeUnit.SECONDS.toNanos(1) / elapsed,
+                    transferService.getLocalTransferCount(), transferService.getCrossShardTransferCount());
+            assertThat(total).isEqualTo(members * 1_000_000L);
+
+            afterEach();
+            dataSources.clear();
+            memberIds.clear();
+        }
+        setup(1);
+    }
+
+    private void setup(int shards) {
+        List<MemberRepository> repositories = new ArrayList<>();
+        List<PlatformTransactionManager> transactionManagers = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            HikariDataSource dataSource = TestDatabase.memory("transferShard" + s);
+            dataSources.add(dataSource);
+            //리포지토리와 트랜잭션 매니저는 같은 DataSource
+            repositories.add(new MemberRepositoryV5(dataSource));
+            transactionManagers.add(new DataSourceTransactionManager(dataSource));
+        }
+        memberRepository = new ShardedMemberRepository(repositories, new HashShardRouter(shards));
+        transferService = new ShardedTransferService(memberRepository, transactionManagers);
+    }
+
+    private void save(String memberId, int money) {
+        memberRepository.save(new Member(memberId, money));
+        memberIds.add(memberId);
+    }
+
+    private String sameShardAs(String memberId) {
+        return findId(memberRepository.shardOf(memberId), memberId);
+    }
+
+    private String otherShardThan(String memberId) {
+        return findId(1 - memberRepository.shardOf(memberId), memberId);
+    }
+
+    private String findId(int shard, String except) {
+        for (int i = 1; ; i++) {
+            String candidate = "ss" + i;
+            if (!candidate.equals(except) && memberRepository.shardOf(candidate) == shard) {
+                return candidate;
+            }
+        }
+    }
+}
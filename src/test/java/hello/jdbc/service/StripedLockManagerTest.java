@@ -0,0 +1,83 @@
+package hello.jdbc.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedLockManagerTest {
+
+    @Test
+    void stripeCountIsPowerOfTwo() {
+        assertThat(new StripedLockManager(1, false).getStripeCount()).isEqualTo(1);
+        assertThat(new StripedLockManager(50, false).getStripeCount()).isEqualTo(64);
+        assertThat(new StripedLockManager(64, true).getStripeCount()).isEqualTo(64);
+    }
+
+    @Test
+    void sameStripeIsLockedOnce() {
+        StripedLockManager lockManager = new StripedLockManager(1, false);
+
+        //스트라이프가 하나뿐이라 두 회원이 같은 락을 쓴다
+        try (StripedLockManager.Acquired acquired = lockManager.acquire("memberA", "memberB")) {
+            assertThat(lockManager.stats()).hasSize(1);
+        }
+        assertThat(lockManager.stats().get(0).getAcquisitions()).isEqualTo(1);
+    }
+
+    @Test
+    void crossingAcquireDoesNotDeadlock() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16, true);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+
+        Future<?> forward = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 10_000; i++) {
+                lockManager.acquire("memberA", "memberB").close();
+            }
+            return null;
+        });
+        Future<?> backward = executor.submit(() -> {
+            start.await();
+            for (int i = 0; i < 10_000; i++) {
+                lockManager.acquire("memberB", "memberA").close();
+            }
+            return null;
+        });
+        start.countDown();
+        forward.get(30, TimeUnit.SECONDS);
+        backward.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        long acquisitions = lockManager.stats().stream().mapToLong(StripedLockManager.StripeStats::getAcquisitions).sum();
+        int stripesPerAcquire = lockManager.stripeOf("memberA") == lockManager.stripeOf("memberB") ? 1 : 2;
+        assertThat(acquisitions).isEqualTo(20_000L * stripesPerAcquire);
+    }
+
+    @Test
+    void contendedWaitIsRecorded() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(4, false);
+        StripedLockManager.Acquired held = lockManager.acquire("memberA", "memberA");
+
+        Thread waiter = new Thread(() -> lockManager.acquire("memberA", "memberA").close());
+        waiter.start();
+        while (lockManager.stats().get(0).getQueueLength() == 0) {
+            Thread.sleep(1);
+        }
+        held.close();
+        waiter.join();
+
+        List<StripedLockManager.StripeStats> stats = lockManager.stats();
+        assertThat(stats).hasSize(1);
+        assertThat(stats.get(0).getAcquisitions()).isEqualTo(2);
+        assertThat(stats.get(0).getContended()).isEqualTo(1);
+        assertThat(stats.get(0).getWaitNanos()).isPositive();
+    }
+}